@@ -0,0 +1,263 @@
+/*
+ * Copyright (C) 2020 Bence Sipka
+ *
+ * This program is free software: you can redistribute it and/or modify 
+ * it under the terms of the GNU General Public License as published by 
+ * the Free Software Foundation, version 3.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package saker.build.ide.eclipse;
+
+import java.io.FilterInputStream;
+import java.io.Flushable;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Buffers the output of a build that is written to multiple console streams.
+ * <p>
+ * The written bytes are collected in a shared buffer in the order they were written, so the ordering between the
+ * standard and error output is kept. The buffer is written to the console after the flush interval passes since the
+ * first write, or when its size exceeds the flush size. In the latter case only the complete lines are written, and
+ * the last partial line is kept in the buffer.
+ * <p>
+ * The buffer should be {@linkplain #flush() flushed} before the user is prompted, so the messages printed before the
+ * prompt are visible. The streams returned by {@link #createFlushingInputStream(InputStream)} do this when the build
+ * reads the console input.
+ */
+public final class BufferedBuildOutput implements Flushable {
+	/**
+	 * The milliseconds after the buffered output is written to the console. Can be configured with the
+	 * <code>saker.build.ide.eclipse.build.console.flush.interval</code> system property.
+	 */
+	private static final int FLUSH_INTERVAL_MILLIS = Integer
+			.getInteger(Activator.PLUGIN_ID + ".build.console.flush.interval", 50);
+	/**
+	 * The number of buffered bytes that cause the complete lines to be written to the console without waiting for the
+	 * flush interval. Can be configured with the <code>saker.build.ide.eclipse.build.console.flush.size</code> system
+	 * property.
+	 */
+	private static final int FLUSH_SIZE = Integer.getInteger(Activator.PLUGIN_ID + ".build.console.flush.size",
+			64 * 1024);
+
+	private static final ScheduledThreadPoolExecutor FLUSH_EXECUTOR;
+	static {
+		FLUSH_EXECUTOR = new ScheduledThreadPoolExecutor(1, r -> {
+			Thread t = new Thread(r, "Build console output flusher");
+			t.setDaemon(true);
+			return t;
+		});
+		FLUSH_EXECUTOR.setKeepAliveTime(5, TimeUnit.SECONDS);
+		FLUSH_EXECUTOR.allowCoreThreadTimeOut(true);
+		FLUSH_EXECUTOR.setRemoveOnCancelPolicy(true);
+	}
+
+	private static final class Segment {
+		protected final OutputStream target;
+		protected byte[] bytes;
+		protected int length;
+
+		public Segment(OutputStream target, int capacity) {
+			this.target = target;
+			this.bytes = new byte[capacity];
+		}
+
+		public void append(byte[] b, int off, int len) {
+			if (length + len > bytes.length) {
+				bytes = Arrays.copyOf(bytes, Math.max(length + len, bytes.length * 2));
+			}
+			System.arraycopy(b, off, bytes, length, len);
+			length += len;
+		}
+
+		public int lastIndexOfLineEnd() {
+			for (int i = length - 1; i >= 0; i--) {
+				if (bytes[i] == '\n') {
+					return i;
+				}
+			}
+			return -1;
+		}
+	}
+
+	private final Object lock = new Object();
+	private final List<Segment> segments = new ArrayList<>();
+	private int bufferedSize;
+	private ScheduledFuture<?> scheduledFlush;
+	/**
+	 * The exception that occurred during a timed flush, thrown on the next write.
+	 */
+	private IOException flushException;
+
+	/**
+	 * Creates an output stream that writes to the given target through this buffer.
+	 * <p>
+	 * Closing the returned stream flushes the buffer, and closes the target.
+	 */
+	public OutputStream createOutputStream(OutputStream target) {
+		return new BufferedTargetOutputStream(target);
+	}
+
+	/**
+	 * Creates an input stream that flushes this buffer before reading from the given stream.
+	 */
+	public InputStream createFlushingInputStream(InputStream in) {
+		return new FilterInputStream(in) {
+			@Override
+			public int read() throws IOException {
+				flush();
+				return super.read();
+			}
+
+			@Override
+			public int read(byte[] b, int off, int len) throws IOException {
+				flush();
+				return super.read(b, off, len);
+			}
+		};
+	}
+
+	/**
+	 * Writes all the buffered output to the console streams.
+	 */
+	@Override
+	public void flush() throws IOException {
+		synchronized (lock) {
+			flushAllLocked();
+		}
+	}
+
+	private void write(OutputStream target, byte[] b, int off, int len) throws IOException {
+		if (len <= 0) {
+			return;
+		}
+		synchronized (lock) {
+			IOException fe = flushException;
+			if (fe != null) {
+				flushException = null;
+				throw fe;
+			}
+			Segment last = segments.isEmpty() ? null : segments.get(segments.size() - 1);
+			if (last == null || last.target != target) {
+				last = new Segment(target, Math.max(len, 1024));
+				segments.add(last);
+			}
+			last.append(b, off, len);
+			bufferedSize += len;
+			if (bufferedSize >= FLUSH_SIZE) {
+				flushLinesLocked();
+			}
+			if (bufferedSize > 0 && scheduledFlush == null) {
+				scheduledFlush = FLUSH_EXECUTOR.schedule(this::timedFlush, FLUSH_INTERVAL_MILLIS,
+						TimeUnit.MILLISECONDS);
+			}
+		}
+	}
+
+	private void timedFlush() {
+		synchronized (lock) {
+			scheduledFlush = null;
+			try {
+				flushAllLocked();
+			} catch (IOException e) {
+				flushException = e;
+			}
+		}
+	}
+
+	/**
+	 * Writes the buffered output up to the last line end, or everything if there are no line ends.
+	 */
+	private void flushLinesLocked() throws IOException {
+		for (int i = segments.size() - 1; i >= 0; i--) {
+			Segment segment = segments.get(i);
+			int lineend = segment.lastIndexOfLineEnd();
+			if (lineend < 0) {
+				continue;
+			}
+			List<Segment> complete = segments.subList(0, i);
+			try {
+				for (Segment s : complete) {
+					s.target.write(s.bytes, 0, s.length);
+					bufferedSize -= s.length;
+				}
+			} finally {
+				complete.clear();
+			}
+			int writelen = lineend + 1;
+			segment.target.write(segment.bytes, 0, writelen);
+			segment.length -= writelen;
+			System.arraycopy(segment.bytes, writelen, segment.bytes, 0, segment.length);
+			bufferedSize -= writelen;
+			if (segment.length == 0) {
+				segments.remove(0);
+			}
+			return;
+		}
+		//a single long line
+		flushAllLocked();
+	}
+
+	private void flushAllLocked() throws IOException {
+		ScheduledFuture<?> sf = scheduledFlush;
+		if (sf != null) {
+			scheduledFlush = null;
+			sf.cancel(false);
+		}
+		try {
+			for (Segment s : segments) {
+				s.target.write(s.bytes, 0, s.length);
+			}
+		} finally {
+			segments.clear();
+			bufferedSize = 0;
+		}
+	}
+
+	private final class BufferedTargetOutputStream extends OutputStream {
+		private final OutputStream target;
+
+		public BufferedTargetOutputStream(OutputStream target) {
+			this.target = target;
+		}
+
+		@Override
+		public void write(int b) throws IOException {
+			BufferedBuildOutput.this.write(target, new byte[] { (byte) b }, 0, 1);
+		}
+
+		@Override
+		public void write(byte[] b, int off, int len) throws IOException {
+			BufferedBuildOutput.this.write(target, b, off, len);
+		}
+
+		@Override
+		public void flush() throws IOException {
+			BufferedBuildOutput.this.flush();
+			target.flush();
+		}
+
+		@Override
+		public void close() throws IOException {
+			try {
+				BufferedBuildOutput.this.flush();
+			} finally {
+				target.close();
+			}
+		}
+	}
+}
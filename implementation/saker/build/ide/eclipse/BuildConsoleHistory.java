@@ -0,0 +1,111 @@
+/*
+ * Copyright (C) 2020 Bence Sipka
+ *
+ * This program is free software: you can redistribute it and/or modify 
+ * it under the terms of the GNU General Public License as published by 
+ * the Free Software Foundation, version 3.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package saker.build.ide.eclipse;
+
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.GZIPOutputStream;
+
+/**
+ * Compressed temporary storage for the build console output that was trimmed from the console document.
+ * <p>
+ * Each trimmed chunk is appended to the file as a separate GZIP member, so the file can be read while more output is
+ * being spilled. The file is created lazily, and deleted when the history is {@linkplain #reset() reset} or closed.
+ */
+public final class BuildConsoleHistory implements Closeable {
+	private final Object lock = new Object();
+	private Path spillFile;
+	private long spilledCharCount;
+
+	/**
+	 * Appends the output that was trimmed from the console.
+	 */
+	public void append(String text) throws IOException {
+		if (text.isEmpty()) {
+			return;
+		}
+		synchronized (lock) {
+			if (spillFile == null) {
+				spillFile = Files.createTempFile("saker-build-console-", ".txt.gz");
+				spillFile.toFile().deleteOnExit();
+			}
+			try (Writer writer = new OutputStreamWriter(new GZIPOutputStream(
+					Files.newOutputStream(spillFile, StandardOpenOption.APPEND), 64 * 1024), StandardCharsets.UTF_8)) {
+				writer.write(text);
+			}
+			spilledCharCount += text.length();
+		}
+	}
+
+	/**
+	 * Gets the number of characters that were spilled since the last reset.
+	 */
+	public long getSpilledCharCount() {
+		synchronized (lock) {
+			return spilledCharCount;
+		}
+	}
+
+	/**
+	 * Writes the spilled output and the given current console contents to the specified file.
+	 */
+	public void export(Path target, String currentcontents) throws IOException {
+		synchronized (lock) {
+			try (Writer writer = new BufferedWriter(new OutputStreamWriter(Files.newOutputStream(target),
+					StandardCharsets.UTF_8))) {
+				if (spillFile != null) {
+					try (BufferedReader reader = new BufferedReader(new InputStreamReader(
+							new GZIPInputStream(Files.newInputStream(spillFile), 64 * 1024), StandardCharsets.UTF_8))) {
+						char[] buf = new char[8 * 1024];
+						for (int read; (read = reader.read(buf)) > 0;) {
+							writer.write(buf, 0, read);
+						}
+					}
+				}
+				writer.write(currentcontents);
+			}
+		}
+	}
+
+	/**
+	 * Discards the spilled output.
+	 */
+	public void reset() throws IOException {
+		synchronized (lock) {
+			Path file = spillFile;
+			spillFile = null;
+			spilledCharCount = 0;
+			if (file != null) {
+				Files.deleteIfExists(file);
+			}
+		}
+	}
+
+	@Override
+	public void close() throws IOException {
+		reset();
+	}
+}
@@ -0,0 +1,198 @@
+/*
+ * Copyright (C) 2020 Bence Sipka
+ *
+ * This program is free software: you can redistribute it and/or modify 
+ * it under the terms of the GNU General Public License as published by 
+ * the Free Software Foundation, version 3.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package saker.build.ide.eclipse;
+
+import java.util.Objects;
+import java.util.regex.Matcher;
+
+import org.eclipse.core.resources.IMarker;
+
+import saker.build.file.path.SakerPath;
+import saker.build.thirdparty.saker.util.ObjectUtils;
+
+/**
+ * A diagnostic reported by the build for a location in a file.
+ * <p>
+ * The diagnostics are reported to a {@link BuildDiagnostic.Listener} that is called on the thread that reported it.
+ * They are currently parsed from the lines printed by the build using {@link #parse(String)}, but can be reported
+ * directly if the information is available in a structured form.
+ */
+public final class BuildDiagnostic {
+	@FunctionalInterface
+	public interface Listener {
+		public void diagnosticReported(BuildDiagnostic diagnostic);
+	}
+
+	private final SakerPath path;
+	private final int lineNumber;
+	private final int startColumn;
+	private final int endColumn;
+	private final int severity;
+	private final String message;
+
+	/**
+	 * Creates a new instance.
+	 * 
+	 * @param path
+	 *            The execution path of the file.
+	 * @param lineNumber
+	 *            The 1 based line number, or 0 if not available.
+	 * @param startColumn
+	 *            The 1 based start column in the line, or -1 if not available.
+	 * @param endColumn
+	 *            The 1 based inclusive end column in the line, or -1 if not available.
+	 * @param severity
+	 *            The severity. One of the <code>IMarker.SEVERITY_*</code> constants.
+	 * @param message
+	 *            The message.
+	 */
+	public BuildDiagnostic(SakerPath path, int lineNumber, int startColumn, int endColumn, int severity,
+			String message) {
+		Objects.requireNonNull(path, "path");
+		this.path = path;
+		this.lineNumber = lineNumber;
+		this.startColumn = startColumn;
+		this.endColumn = endColumn;
+		this.severity = severity;
+		this.message = message;
+	}
+
+	/**
+	 * Parses a diagnostic from a line of the build output.
+	 * <p>
+	 * The lines that don't contain a severity keyword are rejected without running the regular expression on them.
+	 * 
+	 * @param line
+	 *            The line without line ending characters.
+	 * @return The parsed diagnostic or <code>null</code> if the line doesn't contain a diagnostic with a file path.
+	 */
+	public static BuildDiagnostic parse(String line) {
+		if (!mayContainDiagnostic(line)) {
+			return null;
+		}
+		Matcher matcher = SakerProjectBuildConsole.CONSOLE_MARKER_PATTERN.matcher(line);
+		if (!matcher.matches()) {
+			return null;
+		}
+		String file = matcher.group(SakerProjectBuildConsole.CONSOLE_MARKER_GROUP_FILEPATH);
+		if (file == null) {
+			return null;
+		}
+		file = file.trim();
+		if (file.isEmpty()) {
+			return null;
+		}
+		try {
+			SakerPath path = SakerPath.valueOf(file);
+			int linenumber = parseLineNumber(matcher.group(SakerProjectBuildConsole.CONSOLE_MARKER_GROUP_LINE));
+			int startcolumn = parseColumn(matcher.group(SakerProjectBuildConsole.CONSOLE_MARKER_GROUP_LINESTART));
+			int endcolumn = parseColumn(matcher.group(SakerProjectBuildConsole.CONSOLE_MARKER_GROUP_LINEEND));
+			String severity = matcher.group(SakerProjectBuildConsole.CONSOLE_MARKER_GROUP_SEVERITY);
+			String message = matcher.group(SakerProjectBuildConsole.CONSOLE_MARKER_GROUP_MESSAGE);
+			String displayid = matcher.group(SakerProjectBuildConsole.CONSOLE_MARKER_GROUP_DISPLAY_ID);
+			return new BuildDiagnostic(path, linenumber, startcolumn, endcolumn,
+					SakerProjectBuildConsole.getMarkerSeverity(severity),
+					SakerProjectBuildConsole.createMarkerMessage(displayid, severity, message));
+		} catch (IllegalArgumentException e) {
+			//for parsing errors
+			return null;
+		}
+	}
+
+	/**
+	 * Checks if the line contains any of the severity keywords followed by a colon.
+	 */
+	static boolean mayContainDiagnostic(CharSequence line) {
+		int len = line.length();
+		for (int i = 4; i < len; i++) {
+			if (line.charAt(i) != ':') {
+				continue;
+			}
+			//error, warning, fatal error
+			if (regionMatches(line, i - 4, "rror") || regionMatches(line, i - 4, "ning")
+			//info, success
+					|| regionMatches(line, i - 3, "nfo") || regionMatches(line, i - 4, "cess")) {
+				return true;
+			}
+		}
+		return false;
+	}
+
+	private static boolean regionMatches(CharSequence cs, int offset, String str) {
+		int len = str.length();
+		for (int i = 0; i < len; i++) {
+			if (cs.charAt(offset + i) != str.charAt(i)) {
+				return false;
+			}
+		}
+		return true;
+	}
+
+	private static int parseLineNumber(String line) {
+		if (line == null) {
+			return 0;
+		}
+		int result = Integer.parseInt(line);
+		if (result <= 0) {
+			return 1;
+		}
+		return result;
+	}
+
+	private static int parseColumn(String col) {
+		if (ObjectUtils.isNullOrEmpty(col)) {
+			return -1;
+		}
+		int result = Integer.parseInt(col);
+		if (result <= 0) {
+			return -1;
+		}
+		return result;
+	}
+
+	public SakerPath getPath() {
+		return path;
+	}
+
+	public int getLineNumber() {
+		return lineNumber;
+	}
+
+	public int getStartColumn() {
+		return startColumn;
+	}
+
+	public int getEndColumn() {
+		return endColumn;
+	}
+
+	/**
+	 * @see IMarker#SEVERITY
+	 */
+	public int getSeverity() {
+		return severity;
+	}
+
+	public String getMessage() {
+		return message;
+	}
+
+	@Override
+	public String toString() {
+		return getClass().getSimpleName() + "[" + path + ":" + lineNumber + ":" + startColumn + "-" + endColumn + " ("
+				+ severity + "): " + message + "]";
+	}
+}
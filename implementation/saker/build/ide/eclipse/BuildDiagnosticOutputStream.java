@@ -0,0 +1,115 @@
+/*
+ * Copyright (C) 2020 Bence Sipka
+ *
+ * This program is free software: you can redistribute it and/or modify 
+ * it under the terms of the GNU General Public License as published by 
+ * the Free Software Foundation, version 3.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package saker.build.ide.eclipse;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+
+/**
+ * Output stream that forwards the written bytes to the build console, and reports the diagnostics in the completed
+ * lines to a {@link BuildDiagnostic.Listener}.
+ * <p>
+ * The lines are scanned on the writing thread. Only the lines that contain a colon are decoded and parsed. Lines that
+ * are longer than a limit are not parsed.
+ */
+public class BuildDiagnosticOutputStream extends OutputStream {
+	private static final int MAX_LINE_LENGTH = 16 * 1024;
+
+	private final OutputStream out;
+	private final BuildDiagnostic.Listener listener;
+
+	private byte[] lineBuffer = new byte[256];
+	private int lineLength = 0;
+	private boolean lineHasColon = false;
+	private boolean lineOverflow = false;
+
+	public BuildDiagnosticOutputStream(OutputStream out, BuildDiagnostic.Listener listener) {
+		this.out = out;
+		this.listener = listener;
+	}
+
+	@Override
+	public synchronized void write(int b) throws IOException {
+		out.write(b);
+		scan((byte) b);
+	}
+
+	@Override
+	public synchronized void write(byte[] b, int off, int len) throws IOException {
+		out.write(b, off, len);
+		int end = off + len;
+		for (int i = off; i < end; i++) {
+			scan(b[i]);
+		}
+	}
+
+	@Override
+	public void flush() throws IOException {
+		out.flush();
+	}
+
+	@Override
+	public void close() throws IOException {
+		synchronized (this) {
+			endLine();
+		}
+		out.close();
+	}
+
+	private void scan(byte b) {
+		if (b == '\n') {
+			endLine();
+			return;
+		}
+		if (lineOverflow) {
+			return;
+		}
+		if (lineLength == MAX_LINE_LENGTH) {
+			lineOverflow = true;
+			return;
+		}
+		if (lineLength == lineBuffer.length) {
+			lineBuffer = Arrays.copyOf(lineBuffer, Math.min(lineBuffer.length * 2, MAX_LINE_LENGTH));
+		}
+		lineBuffer[lineLength++] = b;
+		if (b == ':') {
+			lineHasColon = true;
+		}
+	}
+
+	private void endLine() {
+		try {
+			if (!lineHasColon || lineOverflow) {
+				return;
+			}
+			int len = lineLength;
+			if (len > 0 && lineBuffer[len - 1] == '\r') {
+				--len;
+			}
+			BuildDiagnostic diagnostic = BuildDiagnostic
+					.parse(new String(lineBuffer, 0, len, StandardCharsets.UTF_8));
+			if (diagnostic != null) {
+				listener.diagnosticReported(diagnostic);
+			}
+		} finally {
+			lineLength = 0;
+			lineHasColon = false;
+			lineOverflow = false;
+		}
+	}
+}
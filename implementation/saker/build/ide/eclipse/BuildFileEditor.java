@@ -18,7 +18,9 @@ package saker.build.ide.eclipse;
 import java.io.IOException;
 import java.util.ArrayList;
 import java.util.Collections;
+import java.util.IdentityHashMap;
 import java.util.Iterator;
+import java.util.LinkedHashMap;
 import java.util.LinkedHashSet;
 import java.util.List;
 import java.util.Map;
@@ -27,7 +29,13 @@ import java.util.Objects;
 import java.util.Set;
 import java.util.Timer;
 import java.util.TimerTask;
-import java.util.TreeMap;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
 
 import org.eclipse.core.resources.IFile;
 import org.eclipse.core.resources.IProject;
@@ -53,11 +61,13 @@ import org.eclipse.jface.text.ITextListener;
 import org.eclipse.jface.text.ITextSelection;
 import org.eclipse.jface.text.ITextViewer;
 import org.eclipse.jface.text.ITypedRegion;
+import org.eclipse.jface.text.JFaceTextUtil;
 import org.eclipse.jface.text.Region;
 import org.eclipse.jface.text.TextEvent;
 import org.eclipse.jface.text.TextPresentation;
 import org.eclipse.jface.text.contentassist.ContentAssistant;
 import org.eclipse.jface.text.contentassist.ICompletionProposal;
+import org.eclipse.jface.text.contentassist.ICompletionProposalExtension2;
 import org.eclipse.jface.text.contentassist.ICompletionProposalExtension3;
 import org.eclipse.jface.text.contentassist.ICompletionProposalExtension5;
 import org.eclipse.jface.text.contentassist.ICompletionProposalExtension6;
@@ -93,7 +103,10 @@ import org.eclipse.swt.SWT;
 import org.eclipse.swt.browser.Browser;
 import org.eclipse.swt.browser.LocationEvent;
 import org.eclipse.swt.browser.LocationListener;
+import org.eclipse.swt.custom.CaretEvent;
+import org.eclipse.swt.custom.CaretListener;
 import org.eclipse.swt.custom.StyleRange;
+import org.eclipse.swt.custom.StyledText;
 import org.eclipse.swt.events.SelectionEvent;
 import org.eclipse.swt.events.SelectionListener;
 import org.eclipse.swt.graphics.Color;
@@ -163,7 +176,6 @@ import saker.build.thirdparty.saker.util.StringUtils;
 import saker.build.thirdparty.saker.util.io.ByteSource;
 import saker.build.thirdparty.saker.util.io.ResourceCloser;
 import saker.build.thirdparty.saker.util.io.function.IOSupplier;
-import saker.build.thirdparty.saker.util.thread.ThreadUtils;
 
 public class BuildFileEditor extends AbstractDecoratedTextEditor implements ModelUpdateListener {
 	public static final String ID = Activator.PLUGIN_ID + ".script.editor";
@@ -173,6 +185,22 @@ public class BuildFileEditor extends AbstractDecoratedTextEditor implements Mode
 
 	private static final int OUTLINE_JOB_INPUT_DELAY = 200;
 
+	private static final int STYLE_TEMPLATE_CACHE_LIMIT = 256;
+	/**
+	 * Whether the completion proposals should be computed on a background thread. Can be turned off by setting the
+	 * <code>saker.build.ide.eclipse.editor.sync.content.assist</code> system property to <code>true</code>.
+	 */
+	private static final boolean ASYNC_CONTENT_ASSIST = !Boolean
+			.getBoolean(Activator.PLUGIN_ID + ".editor.sync.content.assist");
+
+	/**
+	 * Incremental presentation updates can be turned off by setting the
+	 * <code>saker.build.ide.eclipse.editor.full.presentation</code> system property to <code>true</code>. In that case
+	 * the whole document is restyled when the script model is updated.
+	 */
+	private static final boolean INCREMENTAL_PRESENTATION = !Boolean
+			.getBoolean(Activator.PLUGIN_ID + ".editor.full.presentation");
+
 	private static class OutlineElement {
 		protected OutlineElement parent;
 		protected EclipseScriptOutlineEntry element;
@@ -338,7 +366,7 @@ public class BuildFileEditor extends AbstractDecoratedTextEditor implements Mode
 		public Object[] getElements(Object inputElement) {
 			EclipseScriptOutlineRoot root;
 			try {
-				ScriptSyntaxModel m = editorModel.getModelMaybeOutOfDate();
+				ScriptSyntaxModel m = getLatestModel();
 				if (m == null) {
 					return ObjectUtils.EMPTY_OBJECT_ARRAY;
 				}
@@ -505,11 +533,46 @@ public class BuildFileEditor extends AbstractDecoratedTextEditor implements Mode
 
 	private static final class HoverInformationControl extends AbstractInformationControl
 			implements IInformationControlExtension2 {
+		/**
+		 * The time in milliseconds to wait for the information to be rendered before displaying the loading text.
+		 */
+		private static final int RENDER_WAIT_MILLIS = 20;
+		private static final int RENDER_QUEUE_CAPACITY = 8;
+		private static final int HTML_CACHE_SIZE = 64;
+
+		/**
+		 * Shared executor for rendering the hover contents. If the queue is full, the oldest requests are discarded as
+		 * they've been most likely superseded already.
+		 */
+		private static final ThreadPoolExecutor renderExecutor;
+		static {
+			renderExecutor = new ThreadPoolExecutor(2, 2, 5, TimeUnit.SECONDS,
+					new ArrayBlockingQueue<>(RENDER_QUEUE_CAPACITY), r -> {
+						Thread t = new Thread(r, "Script hover renderer");
+						t.setDaemon(true);
+						return t;
+					}, new ThreadPoolExecutor.DiscardOldestPolicy());
+			renderExecutor.allowCoreThreadTimeOut(true);
+		}
+
+		/**
+		 * Rendered HTML contents for token informations in least recently used order.
+		 */
+		private static final Map<HtmlCacheKey, String> htmlCache = new LinkedHashMap<HtmlCacheKey, String>(16, 0.75f,
+				true) {
+			private static final long serialVersionUID = 1L;
+
+			@Override
+			protected boolean removeEldestEntry(Map.Entry<HtmlCacheKey, String> eldest) {
+				return size() > HTML_CACHE_SIZE;
+			}
+		};
 
 		private Browser browser;
 
 		private final Object browserTextSetLock = new Object();
 		private Object loadingInput;
+		private Future<?> loadingFuture;
 
 		private HoverInformationControl(Shell parentShell) {
 			super(parentShell, EditorsUI.getTooltipAffordanceString());
@@ -576,15 +639,45 @@ public class BuildFileEditor extends AbstractDecoratedTextEditor implements Mode
 		public void setInput(Object input) {
 			Display display = browser.getDisplay();
 			Color bgcol = display.getSystemColor(SWT.COLOR_INFO_BACKGROUND);
-			String loadinghtml = getLoadingHtml(bgcol);
 
+			HtmlCacheKey cachekey = input instanceof ScriptTokenInformation ? new HtmlCacheKey(input, bgcol.getRGB())
+					: null;
+			if (cachekey != null) {
+				String cachedhtml;
+				synchronized (htmlCache) {
+					cachedhtml = htmlCache.get(cachekey);
+				}
+				if (cachedhtml != null) {
+					synchronized (browserTextSetLock) {
+						cancelLoadingLocked();
+						browser.setText(cachedhtml);
+					}
+					return;
+				}
+			}
+
+			Future<String> future;
 			synchronized (browserTextSetLock) {
+				cancelLoadingLocked();
 				loadingInput = input;
-				Thread loadert = ThreadUtils.startDaemonThread(() -> {
+				future = renderExecutor.submit(() -> {
+					synchronized (browserTextSetLock) {
+						if (loadingInput != input) {
+							//superseded
+							return null;
+						}
+					}
 					String htmlcontent = generateInformationHtml(input, bgcol);
+					if (cachekey != null) {
+						synchronized (htmlCache) {
+							htmlCache.put(cachekey, htmlcontent);
+						}
+					}
 					display.asyncExec(() -> {
 						synchronized (browserTextSetLock) {
 							if (loadingInput == input) {
+								loadingInput = null;
+								loadingFuture = null;
 								if (browser.isDisposed()) {
 									return;
 								}
@@ -592,19 +685,52 @@ public class BuildFileEditor extends AbstractDecoratedTextEditor implements Mode
 							}
 						}
 					});
+					return htmlcontent;
 				});
-				//if we can finish the loading in a reasonable time window then don't set the loading html
-				try {
-					loadert.join(20);
-					if (!loadert.isAlive()) {
-						return;
+				loadingFuture = future;
+			}
+			//if we can finish the loading in a reasonable time window then don't set the loading html
+			try {
+				String htmlcontent = future.get(RENDER_WAIT_MILLIS, TimeUnit.MILLISECONDS);
+				if (htmlcontent != null) {
+					synchronized (browserTextSetLock) {
+						if (loadingInput == input) {
+							loadingInput = null;
+							loadingFuture = null;
+							browser.setText(htmlcontent);
+						}
 					}
-				} catch (InterruptedException e) {
-					e.printStackTrace();
+					return;
 				}
-				browser.setText(loadinghtml);
+			} catch (TimeoutException | CancellationException e) {
+			} catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+			} catch (ExecutionException e) {
+				ImplActivator.getDefault().displayException(SakerLog.SEVERITY_WARNING,
+						"Failed to generate script information.", e.getCause());
 			}
+			synchronized (browserTextSetLock) {
+				if (loadingInput == input) {
+					browser.setText(getLoadingHtml(bgcol));
+				}
+			}
+		}
 
+		@Override
+		public void dispose() {
+			synchronized (browserTextSetLock) {
+				cancelLoadingLocked();
+			}
+			super.dispose();
+		}
+
+		private void cancelLoadingLocked() {
+			loadingInput = null;
+			Future<?> f = loadingFuture;
+			if (f != null) {
+				loadingFuture = null;
+				f.cancel(false);
+			}
 		}
 
 		private static String generateInformationHtml(Object input, Color bgcol) {
@@ -801,6 +927,33 @@ public class BuildFileEditor extends AbstractDecoratedTextEditor implements Mode
 		}
 	}
 
+	private static final class HtmlCacheKey {
+		private final Object input;
+		private final RGB background;
+
+		public HtmlCacheKey(Object input, RGB background) {
+			this.input = input;
+			this.background = background;
+		}
+
+		@Override
+		public int hashCode() {
+			return input.hashCode() * 31 + Objects.hashCode(background);
+		}
+
+		@Override
+		public boolean equals(Object obj) {
+			if (this == obj)
+				return true;
+			if (obj == null)
+				return false;
+			if (getClass() != obj.getClass())
+				return false;
+			HtmlCacheKey other = (HtmlCacheKey) obj;
+			return input.equals(other.input) && Objects.equals(background, other.background);
+		}
+	}
+
 	private static final class HoverInformationControlCreator implements IInformationControlCreator {
 		@Override
 		public IInformationControl createInformationControl(Shell shell) {
@@ -916,7 +1069,12 @@ public class BuildFileEditor extends AbstractDecoratedTextEditor implements Mode
 				@Override
 				public IRegion getDamageRegion(ITypedRegion partition, DocumentEvent event,
 						boolean documentPartitioningChanged) {
-					return new Region(0, event.getDocument().getLength());
+					IDocument doc = event.getDocument();
+					if (!INCREMENTAL_PRESENTATION) {
+						return new Region(0, doc.getLength());
+					}
+					return PresentationDamage.extendToLines(doc,
+							new Region(event.getOffset(), StringUtils.length(event.getText())));
 				}
 
 				@Override
@@ -959,12 +1117,9 @@ public class BuildFileEditor extends AbstractDecoratedTextEditor implements Mode
 			public void textChanged(TextEvent event) {
 				TextRegionChange dataevent = new TextRegionChange(event.getOffset(), event.getLength(),
 						event.getText());
-				editorModel.textChange(dataevent);
-
-				System.out.println("BuildFileEditor.textChanged() " + dataevent.getOffset() + " ("
-						+ dataevent.getLength() + ") -> " + StringUtils.length(dataevent.getText())
-//								+ " " + dataevent.replacedText + " -> " + dataevent.text
-				);
+				presentationDamage.textChanged(dataevent);
+				proposalCache.textChanged(dataevent);
+				modelUpdater.textChange(dataevent);
 			}
 		}
 
@@ -997,6 +1152,11 @@ public class BuildFileEditor extends AbstractDecoratedTextEditor implements Mode
 		private BuildFileContentAssistant contentAssistant;
 		private BuildFileTextHover textHover = new BuildFileTextHover();
 
+		/**
+		 * Style templates keyed by the token style identities. Only accessed on the UI thread.
+		 */
+		private final Map<TokenStyle, StyleRange> styleTemplates = new IdentityHashMap<>();
+
 //		private final ChangeEventUpdaterJob changeEventProcessorJob = new ChangeEventUpdaterJob(this);
 
 		public Configuration() {
@@ -1007,43 +1167,32 @@ public class BuildFileEditor extends AbstractDecoratedTextEditor implements Mode
 			return new RichInformationControlCreator();
 		}
 
-		public void createPresentation(TextPresentation presentation, ITypedRegion damage) {
-			List<TokenState> tokenstates = editorModel.getCurrentTokenState();
+		public void createPresentation(TextPresentation presentation, IRegion damage) {
+			createPresentation(presentation, damage, editorModel.getCurrentTokenState());
+		}
+
+		public void createPresentation(TextPresentation presentation, IRegion damage, List<TokenState> tokenstates) {
 			if (ObjectUtils.isNullOrEmpty(tokenstates)) {
 				return;
 			}
-			for (TokenState token : tokenstates) {
-				Color fg = null;
-				Color bg = null;
-
-				TokenStyle style = token.getStyle();
-				int bgc = TokenStyle.COLOR_UNSPECIFIED;
-				int fgc = TokenStyle.COLOR_UNSPECIFIED;
-				int s = 0;
-				if (style != null) {
-					fgc = style.getForegroundColor();
-					bgc = style.getBackgroundColor();
-					s = style.getStyle();
-					if (fgc != TokenStyle.COLOR_UNSPECIFIED) {
-						fg = getColor(fgc);
-					}
-				}
-				StyleRange range = new StyleRange(token.getOffset(), token.getLength(), fg, bg);
-				if (bgc != TokenStyle.COLOR_UNSPECIFIED) {
-					bg = getColor(bgc);
-				}
-				if (((s & TokenStyle.STYLE_ITALIC) == TokenStyle.STYLE_ITALIC)) {
-					range.fontStyle |= SWT.ITALIC;
-				}
-				if (((s & TokenStyle.STYLE_BOLD) == TokenStyle.STYLE_BOLD)) {
-					range.fontStyle |= SWT.BOLD;
-				}
-				if (((s & TokenStyle.STYLE_UNDERLINE) == TokenStyle.STYLE_UNDERLINE)) {
-					range.underline = true;
-				}
-				if (((s & TokenStyle.STYLE_STRIKETHROUGH) == TokenStyle.STYLE_STRIKETHROUGH)) {
-					range.strikeout = true;
+			int startidx;
+			int damageend;
+			if (damage == null) {
+				startidx = 0;
+				damageend = Integer.MAX_VALUE;
+			} else {
+				startidx = getFirstTokenIndexEndingAfter(tokenstates, damage.getOffset());
+				damageend = damage.getOffset() + damage.getLength();
+			}
+			int tokencount = tokenstates.size();
+			for (int i = startidx; i < tokencount; i++) {
+				TokenState token = tokenstates.get(i);
+				if (token.getOffset() >= damageend) {
+					break;
 				}
+				StyleRange range = (StyleRange) getStyleTemplate(token.getStyle()).clone();
+				range.start = token.getOffset();
+				range.length = token.getLength();
 				presentation.addStyleRange(range);
 			}
 		}
@@ -1081,13 +1230,82 @@ public class BuildFileEditor extends AbstractDecoratedTextEditor implements Mode
 			return textHover;
 		}
 
+		private int getFirstTokenIndexEndingAfter(List<TokenState> tokenstates, int offset) {
+			//the token states are ordered by their offsets, binary search for the first token that intersects
+			int low = 0;
+			int high = tokenstates.size() - 1;
+			while (low <= high) {
+				int mid = (low + high) >>> 1;
+				TokenState token = tokenstates.get(mid);
+				if (token.getOffset() + token.getLength() <= offset) {
+					low = mid + 1;
+				} else {
+					high = mid - 1;
+				}
+			}
+			return low;
+		}
+
+		/**
+		 * Gets the shared style range that contains the presentation attributes of the given token style.
+		 * <p>
+		 * The returned object must not be modified, but cloned and have its range set.
+		 */
+		private StyleRange getStyleTemplate(TokenStyle style) {
+			StyleRange template = styleTemplates.get(style);
+			if (template != null) {
+				return template;
+			}
+			if (styleTemplates.size() >= STYLE_TEMPLATE_CACHE_LIMIT) {
+				//the model creates new style instances for some reason, don't grow indefinitely
+				styleTemplates.clear();
+			}
+			template = createStyleTemplate(style);
+			styleTemplates.put(style, template);
+			return template;
+		}
+
+		private StyleRange createStyleTemplate(TokenStyle style) {
+			StyleRange range = new StyleRange();
+			if (style == null) {
+				return range;
+			}
+			int fgc = style.getForegroundColor();
+			int bgc = style.getBackgroundColor();
+			int s = style.getStyle();
+			if (fgc != TokenStyle.COLOR_UNSPECIFIED) {
+				range.foreground = getColor(fgc);
+			}
+			if (bgc != TokenStyle.COLOR_UNSPECIFIED) {
+				range.background = getColor(bgc);
+			}
+			if (((s & TokenStyle.STYLE_ITALIC) == TokenStyle.STYLE_ITALIC)) {
+				range.fontStyle |= SWT.ITALIC;
+			}
+			if (((s & TokenStyle.STYLE_BOLD) == TokenStyle.STYLE_BOLD)) {
+				range.fontStyle |= SWT.BOLD;
+			}
+			if (((s & TokenStyle.STYLE_UNDERLINE) == TokenStyle.STYLE_UNDERLINE)) {
+				range.underline = true;
+			}
+			if (((s & TokenStyle.STYLE_STRIKETHROUGH) == TokenStyle.STYLE_STRIKETHROUGH)) {
+				range.strikeout = true;
+			}
+			return range;
+		}
+
 		private Color makeColor(int c) {
 			return new Color(Display.getDefault(), (c & 0x00FF0000) >>> 16, (c & 0x0000FF00) >>> 8, (c & 0x000000FF),
 					(c & 0xFF000000) >>> 24);
 		}
 
 		private Color getColor(int c) {
-			return typecolors.computeIfAbsent(c, this::makeColor);
+			Color result = typeColors.get(c);
+			if (result == null) {
+				result = makeColor(c);
+				typeColors.put(c, result);
+			}
+			return result;
 		}
 
 		@Override
@@ -1116,14 +1334,20 @@ public class BuildFileEditor extends AbstractDecoratedTextEditor implements Mode
 	}
 
 	private class InsertOnlyCompletionProposal implements ScriptProposalHolder, ICompletionProposal,
-			ICompletionProposalExtension3, ICompletionProposalExtension5, ICompletionProposalExtension6 {
+			ICompletionProposalExtension2, ICompletionProposalExtension3, ICompletionProposalExtension5,
+			ICompletionProposalExtension6 {
 		private EclipseScriptProposalEntry proposal;
 		private List<? extends CompletionProposalEdit> changes;
+		/**
+		 * The offset at which the proposal was computed.
+		 */
+		private int invocationOffset;
 
 		public InsertOnlyCompletionProposal(EclipseScriptProposalEntry proposal,
-				List<? extends CompletionProposalEdit> changes) {
+				List<? extends CompletionProposalEdit> changes, int invocationOffset) {
 			this.proposal = proposal;
 			this.changes = changes;
+			this.invocationOffset = invocationOffset;
 		}
 
 		@Override
@@ -1131,6 +1355,16 @@ public class BuildFileEditor extends AbstractDecoratedTextEditor implements Mode
 			return proposal.getProposal();
 		}
 
+		/**
+		 * Gets the start offset of the region that the proposal replaces, or -1 if it consists of multiple edits.
+		 */
+		public int getReplacementOffset() {
+			if (changes.size() != 1) {
+				return -1;
+			}
+			return changes.get(0).getOffset();
+		}
+
 		@Override
 		public void apply(IDocument document) {
 			try {
@@ -1162,6 +1396,59 @@ public class BuildFileEditor extends AbstractDecoratedTextEditor implements Mode
 			}
 		}
 
+		@Override
+		public void apply(ITextViewer viewer, char trigger, int stateMask, int offset) {
+			IDocument document = viewer.getDocument();
+			int typedlen = offset - invocationOffset;
+			if (typedlen > 0 && changes.size() == 1) {
+				//the user typed after the proposals were computed, the typed characters are replaced as well
+				InsertCompletionProposalEdit c = (InsertCompletionProposalEdit) changes.get(0);
+				if (c.getOffset() + c.getLength() >= invocationOffset) {
+					try {
+						document.replace(c.getOffset(), c.getLength() + typedlen, c.getText());
+					} catch (BadLocationException e) {
+						//shouldnt occurr
+						e.printStackTrace();
+					}
+					return;
+				}
+			}
+			apply(document);
+		}
+
+		@Override
+		public boolean validate(IDocument document, int offset, DocumentEvent event) {
+			//called when the document is modified while the proposal popup is open
+			//the proposal stays valid as long as the text typed since its start is a prefix of the inserted text
+			//this way the proposal list is filtered instead of being recomputed for every keystroke
+			if (offset < invocationOffset) {
+				return false;
+			}
+			if (changes.size() != 1) {
+				return offset == invocationOffset;
+			}
+			InsertCompletionProposalEdit c = (InsertCompletionProposalEdit) changes.get(0);
+			int start = c.getOffset();
+			if (offset < start) {
+				return false;
+			}
+			try {
+				String typed = document.get(start, offset - start);
+				String text = ObjectUtils.nullDefault(c.getText(), "");
+				return text.regionMatches(true, 0, typed, 0, typed.length());
+			} catch (BadLocationException e) {
+				return false;
+			}
+		}
+
+		@Override
+		public void selected(ITextViewer viewer, boolean smartToggle) {
+		}
+
+		@Override
+		public void unselected(ITextViewer viewer) {
+		}
+
 		@Override
 		public Point getSelection(IDocument document) {
 			return new Point(getProposal().getSelectionOffset(), 0);
@@ -1232,7 +1519,7 @@ public class BuildFileEditor extends AbstractDecoratedTextEditor implements Mode
 
 	}
 
-	private ICompletionProposal createProposal(EclipseScriptProposalEntry proposalentry) {
+	private ICompletionProposal createProposal(EclipseScriptProposalEntry proposalentry, int invocationoffset) {
 		ScriptCompletionProposal proposal = proposalentry.getProposal();
 		List<? extends CompletionProposalEdit> changes = proposal.getTextChanges();
 		if (changes.isEmpty()) {
@@ -1259,10 +1546,16 @@ public class BuildFileEditor extends AbstractDecoratedTextEditor implements Mode
 				}
 			}
 		}
-		return new InsertOnlyCompletionProposal(proposalentry, changes);
+		return new InsertOnlyCompletionProposal(proposalentry, changes, invocationoffset);
 	}
 
 	private final class BuildFileContentAssistantProcessor implements IContentAssistProcessor {
+		private final BuildFileContentAssistant assistant;
+
+		public BuildFileContentAssistantProcessor(BuildFileContentAssistant assistant) {
+			this.assistant = assistant;
+		}
+
 		@Override
 		public String getErrorMessage() {
 			// TODO Auto-generated method stub
@@ -1295,40 +1588,37 @@ public class BuildFileEditor extends AbstractDecoratedTextEditor implements Mode
 
 		@Override
 		public ICompletionProposal[] computeCompletionProposals(ITextViewer viewer, int offset) {
-			System.out.println("BuildFileEditor.BuildFileContentAssistantProcessor.computeCompletionProposals()");
-//			synchronized (updateLock) {
-////				System.out.println("BuildFileEditor.BuildFileContentAssistantProcessor.computeCompletionProposals() SIZE: " + unprocessedChangeEvents.size());
-//				if (!unprocessedChangeEvents.isEmpty()) {
-//					//hurry up, reschedule to start
-//					reschedule(modelUpdaterRunnable);
-//					return new ICompletionProposal[] { new InfoCompletionsProposal("Computing proposals...") };
-//				}
-//			}
-
-//			String contexttypeid = "contexttypeid";
-//			String pattern = "pattern ${var1}  ${var2} ${var1}";
-//			Template template = new Template("name", "description", contexttypeid, pattern, false);
-//			TemplateContext context = new DocumentTemplateContext(new TemplateContextType(contexttypeid), viewer.getDocument(), offset, 0);
-//			return new ICompletionProposal[] { new TemplateProposal(template, context, new Region(0, 0), null) };
-
-			long nanos = System.nanoTime();
+			//in asynchronous mode this is called on a background thread
+			ICompletionProposal[] cached = proposalCache.get(viewer.getDocument(), offset);
+			if (cached != null) {
+				return cached;
+			}
+			long cacheversion = proposalCache.getVersion();
 			ScriptSyntaxModel model = getUpdatedModel();
 			if (model == null) {
 				return null;
 			}
+			if (assistant.isCaretMovedFrom(offset)) {
+				//cancelled, a new computation is started for the current caret position if necessary
+				return null;
+			}
 			List<? extends ScriptCompletionProposal> proposals = model.getCompletionProposals(offset);
+			ICompletionProposal[] result;
 			if (ObjectUtils.isNullOrEmpty(proposals)) {
-				return new ICompletionProposal[] {};
+				result = new ICompletionProposal[] {};
+			} else {
+				if (assistant.isCaretMovedFrom(offset)) {
+					return null;
+				}
+				result = createEclipseCompletionProposals(proposals, offset);
 			}
-			ICompletionProposal[] result = createEclipseCompletionProposals(proposals);
-			System.out.println(
-					"BuildFileEditor.BuildFileContentAssistant.BuildFileContentAssistant().new IContentAssistProcessor() {...}.computeCompletionProposals() "
-							+ (System.nanoTime() - nanos) / 1_000_000 + " ms");
+			proposalCache.put(cacheversion, offset, result);
 			return result;
 		}
 	}
 
-	private ICompletionProposal[] createEclipseCompletionProposals(List<? extends ScriptCompletionProposal> proposals) {
+	private ICompletionProposal[] createEclipseCompletionProposals(List<? extends ScriptCompletionProposal> proposals,
+			int invocationoffset) {
 		EclipseScriptProposalRoot proposalroot = EclipseScriptProposalRoot.create(proposals);
 		IScriptProposalDesigner designer = ImplActivator.getDefault().getEclipseIDEPlugin()
 				.getScriptProposalDesignerForSchemaIdentifiers(proposalroot.getSchemaIdentifiers());
@@ -1337,7 +1627,7 @@ public class BuildFileEditor extends AbstractDecoratedTextEditor implements Mode
 		}
 		List<ICompletionProposal> resultprops = new ArrayList<>(proposals.size());
 		for (EclipseScriptProposalEntry proposal : proposalroot.getProposals()) {
-			ICompletionProposal prop = createProposal(proposal);
+			ICompletionProposal prop = createProposal(proposal, invocationoffset);
 			if (prop != null) {
 				resultprops.add(prop);
 			}
@@ -1346,17 +1636,24 @@ public class BuildFileEditor extends AbstractDecoratedTextEditor implements Mode
 	}
 
 	private class BuildFileContentAssistant extends ContentAssistant {
+		private final CaretListener caretListener = this::caretMoved;
+		private ITextViewer installedViewer;
+		/**
+		 * The document offset of the caret in the installed viewer. Only tracked in asynchronous mode.
+		 */
+		private volatile int caretOffset = -1;
 
 		public BuildFileContentAssistant() {
 			//true --> create async proposal popup
 			//false --> non async
 
-			//don't create an asynchronous proposal assistant, as the completion proposal retrievals
-			//should finish FAST. Using async proposal popups cause blinking when proposals are recomputed
-			super(false);
+			//the proposals are computed on a background thread in async mode, so the UI doesn't freeze while
+			//the model is being updated. The proposals implement ICompletionProposalExtension2 so the
+			//popup filters the previous list when typing, instead of recomputing it, which would cause blinking
+			super(ASYNC_CONTENT_ASSIST);
 
 			enableColoredLabels(true);
-			setContentAssistProcessor(new BuildFileContentAssistantProcessor(), IDocument.DEFAULT_CONTENT_TYPE);
+			setContentAssistProcessor(new BuildFileContentAssistantProcessor(this), IDocument.DEFAULT_CONTENT_TYPE);
 //			setRepeatedInvocationMode(true);
 			setRestoreCompletionProposalSize(Activator.getDefault().getProposalDialogSettings());
 			setInformationControlCreator(new RichInformationControlCreator());
@@ -1378,15 +1675,74 @@ public class BuildFileEditor extends AbstractDecoratedTextEditor implements Mode
 				return 0;
 			});
 		}
+
+		@Override
+		public void install(ITextViewer textViewer) {
+			super.install(textViewer);
+			if (!ASYNC_CONTENT_ASSIST) {
+				return;
+			}
+			StyledText widget = textViewer.getTextWidget();
+			if (widget == null) {
+				return;
+			}
+			installedViewer = textViewer;
+			caretOffset = JFaceTextUtil.widgetOffset2ModelOffset(textViewer, widget.getCaretOffset());
+			widget.addCaretListener(caretListener);
+		}
+
+		@Override
+		public void uninstall() {
+			ITextViewer viewer = installedViewer;
+			if (viewer != null) {
+				installedViewer = null;
+				StyledText widget = viewer.getTextWidget();
+				if (widget != null && !widget.isDisposed()) {
+					widget.removeCaretListener(caretListener);
+				}
+			}
+			super.uninstall();
+		}
+
+		/**
+		 * Checks if the caret was moved away from the given offset since the proposal computation was started.
+		 * <p>
+		 * Always <code>false</code> if the assistant is not in asynchronous mode.
+		 */
+		public boolean isCaretMovedFrom(int offset) {
+			return installedViewer != null && caretOffset != offset;
+		}
+
+		private void caretMoved(CaretEvent event) {
+			ITextViewer viewer = installedViewer;
+			if (viewer == null) {
+				return;
+			}
+			caretOffset = JFaceTextUtil.widgetOffset2ModelOffset(viewer, event.caretOffset);
+		}
 	}
 
-	private Map<Integer, Color> typecolors = new TreeMap<>();
+	private final ColorTable typeColors = new ColorTable();
 
 	private Configuration configuration = new Configuration();
 
 	private OutlinePage outline;
 
 	private ScriptEditorModel editorModel = new ScriptEditorModel();
+	private final ScriptEditorModelUpdater modelUpdater = new ScriptEditorModelUpdater(editorModel);
+
+	private final CompletionProposalCache proposalCache = new CompletionProposalCache();
+
+	/**
+	 * The text changes that happened since the last presentation update. Only accessed on the UI thread.
+	 */
+	private final PresentationDamage presentationDamage = new PresentationDamage();
+	/**
+	 * The token states that were last applied to the text viewer, or <code>null</code> if a full presentation update
+	 * is required. Only accessed on the UI thread.
+	 */
+	private List<TokenState> presentedTokenStates;
+	private int presentedDocumentLength;
 
 	private int currentTokenTheme = TokenStyle.THEME_LIGHT;
 
@@ -1408,7 +1764,7 @@ public class BuildFileEditor extends AbstractDecoratedTextEditor implements Mode
 					currentTokenTheme = rgb.getHSB()[2] < 0.4f ? TokenStyle.THEME_DARK : TokenStyle.THEME_LIGHT;
 					editorModel.setTokenTheme(currentTokenTheme);
 					rescheduleOutlineUpdate();
-					reschedulePresentationUpdate();
+					rescheduleFullPresentationUpdate();
 				}
 			}
 		};
@@ -1443,7 +1799,7 @@ public class BuildFileEditor extends AbstractDecoratedTextEditor implements Mode
 
 	protected ScriptSyntaxModel getUpdatedModel() {
 		try {
-			return editorModel.getUpToDateModel();
+			return modelUpdater.getUpToDateModel();
 		} catch (InterruptedException e) {
 			// XXX better exception displayer?
 			ImplActivator.getDefault().displayException(SakerLog.SEVERITY_WARNING, "Script model updating interrupted.",
@@ -1452,6 +1808,34 @@ public class BuildFileEditor extends AbstractDecoratedTextEditor implements Mode
 		}
 	}
 
+	/**
+	 * Gets the number of content assist invocations that were served from the proposal cache.
+	 */
+	public long getProposalCacheHitCount() {
+		return proposalCache.getHitCount();
+	}
+
+	/**
+	 * Gets the number of content assist invocations that required the proposals to be computed.
+	 */
+	public long getProposalCacheMissCount() {
+		return proposalCache.getMissCount();
+	}
+
+	/**
+	 * Gets the most recently updated model without waiting for the pending changes to be applied.
+	 */
+	protected ScriptSyntaxModel getLatestModel() {
+		ScriptEditorModelUpdater.Snapshot snapshot = modelUpdater.getSnapshot();
+		if (snapshot != null) {
+			ScriptSyntaxModel model = snapshot.getModel();
+			if (model != null) {
+				return model;
+			}
+		}
+		return editorModel.getModelMaybeOutOfDate();
+	}
+
 	@Override
 	public void init(IEditorSite site, IEditorInput input) throws PartInitException {
 		System.out.println("BuildFileEditor.init() start");
@@ -1465,11 +1849,10 @@ public class BuildFileEditor extends AbstractDecoratedTextEditor implements Mode
 		ITheme currentTheme = PlatformUI.getWorkbench().getThemeManager().getCurrentTheme();
 		currentTheme.getColorRegistry().removeListener(themeListener);
 		super.dispose();
-		for (Color c : typecolors.values()) {
-			c.dispose();
-		}
+		typeColors.dispose();
 		outline = null;
 		editorModel.removeModelListener(this);
+		modelUpdater.close();
 		editorModel.close();
 	}
 
@@ -1667,7 +2050,8 @@ public class BuildFileEditor extends AbstractDecoratedTextEditor implements Mode
 		//may be null if the editor has been closed
 		if (docprov != null) {
 			IDocument doc = docprov.getDocument(input);
-			editorModel.resetInput(doc.get());
+			proposalCache.invalidate();
+			modelUpdater.resetInput(doc.get());
 		}
 	}
 
@@ -1705,27 +2089,406 @@ public class BuildFileEditor extends AbstractDecoratedTextEditor implements Mode
 		if (textviewer != null) {
 			getSite().getShell().getDisplay().asyncExec(() -> {
 				if (getSourceViewer() == textviewer) {
-					TextPresentation tp = new TextPresentation(1000);
-					if (tp.getExtent() == null) {
-						//add an empty style to avoid NPE in buggy Eclipse code......
-						tp.addStyleRange(new StyleRange());
-					}
-					configuration.createPresentation(tp, null);
-					textviewer.changeTextPresentation(tp, false);
+					updatePresentation(textviewer);
+				}
+			});
+		}
+	}
+
+	protected void rescheduleFullPresentationUpdate() {
+		ITextViewer textviewer = getSourceViewer();
+		if (textviewer != null) {
+			getSite().getShell().getDisplay().asyncExec(() -> {
+				if (getSourceViewer() == textviewer) {
+					presentedTokenStates = null;
+					updatePresentation(textviewer);
 				}
 			});
 		}
 	}
 
+	private void updatePresentation(ITextViewer textviewer) {
+		ScriptEditorModelUpdater.Snapshot snapshot = modelUpdater.getSnapshot();
+		List<TokenState> tokenstates = snapshot == null ? editorModel.getCurrentTokenState()
+				: snapshot.getTokenStates();
+		IDocument document = textviewer.getDocument();
+		IRegion textdamage = presentationDamage.take();
+		List<TokenState> prevtokenstates = presentedTokenStates;
+		int prevdocumentlength = presentedDocumentLength;
+
+		presentedTokenStates = tokenstates;
+		presentedDocumentLength = document == null ? 0 : document.getLength();
+
+		if (tokenstates == prevtokenstates && textdamage == null) {
+			//nothing changed since the last update
+			return;
+		}
+		if (!INCREMENTAL_PRESENTATION || prevtokenstates == null || tokenstates == null || document == null) {
+			TextPresentation tp = new TextPresentation(1000);
+			if (tp.getExtent() == null) {
+				//add an empty style to avoid NPE in buggy Eclipse code......
+				tp.addStyleRange(new StyleRange());
+			}
+			configuration.createPresentation(tp, null, tokenstates);
+			textviewer.changeTextPresentation(tp, false);
+			return;
+		}
+		IRegion tokendamage = PresentationDamage.getTokenStateDamage(prevtokenstates, tokenstates,
+				presentedDocumentLength - prevdocumentlength);
+		IRegion damage = PresentationDamage.union(textdamage, tokendamage);
+		if (damage != null) {
+			damage = PresentationDamage.extendToLines(document, damage);
+			applyPartialPresentation(textviewer, damage, tokenstates);
+		}
+		if (tokendamage == null && textdamage != null) {
+			//the text was modified, but the model hasn't caught up yet
+			//restyle the visible area as the widget shifted the styles of the modified lines
+			IRegion viewport = getViewportRegion(textviewer, document);
+			if (viewport != null && !PresentationDamage.contains(damage, viewport)) {
+				applyPartialPresentation(textviewer, viewport, tokenstates);
+			}
+		}
+	}
+
+	private void applyPartialPresentation(ITextViewer textviewer, IRegion region, List<TokenState> tokenstates) {
+		if (region.getLength() <= 0) {
+			return;
+		}
+		TextPresentation tp = new TextPresentation(region, 64);
+		configuration.createPresentation(tp, region, tokenstates);
+		textviewer.changeTextPresentation(tp, false);
+	}
+
+	private static IRegion getViewportRegion(ITextViewer textviewer, IDocument document) {
+		int start = textviewer.getTopIndexStartOffset();
+		int end = textviewer.getBottomIndexEndOffset();
+		if (start < 0 || end < start) {
+			return null;
+		}
+		return new Region(start, Math.min(end, document.getLength()) - start);
+	}
+
 	@Override
 	public void modelUpdated(ScriptSyntaxModel model) {
 		if (model == null) {
 			return;
 		}
+		modelUpdater.publishSnapshot(model);
 		reschedulePresentationUpdate();
 		rescheduleOutlineUpdate();
 	}
 
+	/**
+	 * Open addressing hash table that maps ARGB color values to their allocated {@link Color} instances without
+	 * boxing the keys.
+	 */
+	private static final class ColorTable {
+		private int[] keys = new int[16];
+		private Color[] values = new Color[16];
+		private int size;
+
+		public Color get(int argb) {
+			int mask = keys.length - 1;
+			for (int i = hash(argb) & mask;; i = (i + 1) & mask) {
+				Color c = values[i];
+				if (c == null) {
+					return null;
+				}
+				if (keys[i] == argb) {
+					return c;
+				}
+			}
+		}
+
+		public void put(int argb, Color color) {
+			if ((size + 1) * 2 > keys.length) {
+				rehash(keys.length * 2);
+			}
+			if (insert(keys, values, argb, color)) {
+				++size;
+			}
+		}
+
+		public void dispose() {
+			for (int i = 0; i < values.length; i++) {
+				Color c = values[i];
+				if (c != null) {
+					c.dispose();
+					values[i] = null;
+				}
+			}
+			size = 0;
+		}
+
+		private void rehash(int ncapacity) {
+			int[] nkeys = new int[ncapacity];
+			Color[] nvalues = new Color[ncapacity];
+			for (int i = 0; i < values.length; i++) {
+				Color c = values[i];
+				if (c != null) {
+					insert(nkeys, nvalues, keys[i], c);
+				}
+			}
+			this.keys = nkeys;
+			this.values = nvalues;
+		}
+
+		private static boolean insert(int[] keys, Color[] values, int argb, Color color) {
+			int mask = keys.length - 1;
+			for (int i = hash(argb) & mask;; i = (i + 1) & mask) {
+				if (values[i] == null) {
+					keys[i] = argb;
+					values[i] = color;
+					return true;
+				}
+				if (keys[i] == argb) {
+					values[i] = color;
+					return false;
+				}
+			}
+		}
+
+		private static int hash(int argb) {
+			int h = argb * 0x9E3779B9;
+			return h ^ (h >>> 16);
+		}
+	}
+
+	/**
+	 * Tracks the document region that was modified since the last presentation update, and computes the damaged
+	 * regions between token state lists.
+	 * <p>
+	 * The tracked offsets are in the coordinates of the current document.
+	 */
+	private static final class PresentationDamage {
+		private int start = -1;
+		private int end = -1;
+
+		public void textChanged(TextRegionChange change) {
+			int offset = change.getOffset();
+			int insertlen = StringUtils.length(change.getText());
+			int delta = insertlen - change.getLength();
+			if (start < 0) {
+				start = offset;
+				end = offset + insertlen;
+				return;
+			}
+			//shift the previously recorded region according to the change
+			if (offset < start) {
+				start = Math.max(offset, start + delta);
+			}
+			if (offset <= end) {
+				end = Math.max(offset + insertlen, end + delta);
+			} else {
+				end = offset + insertlen;
+			}
+			if (end < start) {
+				end = start;
+			}
+		}
+
+		public IRegion take() {
+			IRegion result = start < 0 ? null : new Region(start, end - start);
+			start = -1;
+			end = -1;
+			return result;
+		}
+
+		public static IRegion getTokenStateDamage(List<TokenState> prev, List<TokenState> current, int lengthdelta) {
+			int prevsize = prev.size();
+			int cursize = current.size();
+			int minsize = Math.min(prevsize, cursize);
+			int prefix = 0;
+			while (prefix < minsize && isSameTokenPresentation(prev.get(prefix), current.get(prefix), 0)) {
+				++prefix;
+			}
+			if (prefix == prevsize && prefix == cursize) {
+				return null;
+			}
+			int suffix = 0;
+			while (suffix < minsize - prefix && isSameTokenPresentation(prev.get(prevsize - 1 - suffix),
+					current.get(cursize - 1 - suffix), lengthdelta)) {
+				++suffix;
+			}
+			int start = Integer.MAX_VALUE;
+			int end = -1;
+			if (prefix < cursize - suffix) {
+				TokenState first = current.get(prefix);
+				TokenState last = current.get(cursize - 1 - suffix);
+				start = first.getOffset();
+				end = last.getOffset() + last.getLength();
+			}
+			if (prefix < prevsize - suffix) {
+				//the removed tokens damage the region they previously occupied
+				TokenState first = prev.get(prefix);
+				TokenState last = prev.get(prevsize - 1 - suffix);
+				start = Math.min(start, first.getOffset());
+				end = Math.max(end, last.getOffset() + last.getLength() + lengthdelta);
+			}
+			if (end < start) {
+				return null;
+			}
+			return new Region(start, end - start);
+		}
+
+		public static IRegion union(IRegion a, IRegion b) {
+			if (a == null) {
+				return b;
+			}
+			if (b == null) {
+				return a;
+			}
+			int start = Math.min(a.getOffset(), b.getOffset());
+			int end = Math.max(a.getOffset() + a.getLength(), b.getOffset() + b.getLength());
+			return new Region(start, end - start);
+		}
+
+		public static boolean contains(IRegion region, IRegion sub) {
+			if (region == null) {
+				return false;
+			}
+			return sub.getOffset() >= region.getOffset()
+					&& sub.getOffset() + sub.getLength() <= region.getOffset() + region.getLength();
+		}
+
+		public static IRegion extendToLines(IDocument document, IRegion region) {
+			int doclen = document.getLength();
+			int start = Math.max(0, Math.min(region.getOffset(), doclen));
+			int end = Math.max(start, Math.min(region.getOffset() + region.getLength(), doclen));
+			try {
+				IRegion startline = document.getLineInformationOfOffset(start);
+				IRegion endline = document.getLineInformationOfOffset(end);
+				start = startline.getOffset();
+				end = endline.getOffset() + endline.getLength();
+			} catch (BadLocationException e) {
+				//shouldn't happen as the offsets are clamped, style the region as is
+			}
+			return new Region(start, end - start);
+		}
+
+		private static boolean isSameTokenPresentation(TokenState prev, TokenState current, int offsetdelta) {
+			if (prev.getOffset() + offsetdelta != current.getOffset()) {
+				return false;
+			}
+			if (prev.getLength() != current.getLength()) {
+				return false;
+			}
+			return isSameStyle(prev.getStyle(), current.getStyle());
+		}
+
+		private static boolean isSameStyle(TokenStyle l, TokenStyle r) {
+			if (l == r) {
+				return true;
+			}
+			if (l == null || r == null) {
+				return false;
+			}
+			return l.getForegroundColor() == r.getForegroundColor()
+					&& l.getBackgroundColor() == r.getBackgroundColor() && l.getStyle() == r.getStyle();
+		}
+	}
+
+	/**
+	 * Caches the designed completion proposals of the last content assist invocation.
+	 * <p>
+	 * The cache entry is keyed by the edit version of the document and the anchor offset of the completion. The
+	 * anchor is the start of the region that the proposals replace. Text changes between the anchor and the end of
+	 * the typed text don't invalidate the entry, as they only extend or shrink the identifier being completed. In that
+	 * case the cached proposals are filtered for the new offset instead of being recomputed. Any other change or an
+	 * input reset increments the version and discards the entry.
+	 */
+	private static final class CompletionProposalCache {
+		private long version;
+
+		private ICompletionProposal[] proposals;
+		private int anchor;
+		private int invocationOffset;
+		/**
+		 * The end offset of the text that was typed after the anchor, in current document coordinates.
+		 */
+		private int typedEnd;
+
+		private long hitCount;
+		private long missCount;
+
+		public synchronized long getVersion() {
+			return version;
+		}
+
+		public synchronized void textChanged(TextRegionChange change) {
+			if (proposals != null) {
+				int offset = change.getOffset();
+				int end = offset + change.getLength();
+				if (offset >= anchor && end <= typedEnd) {
+					typedEnd += StringUtils.length(change.getText()) - change.getLength();
+					return;
+				}
+			}
+			invalidate();
+		}
+
+		public synchronized void invalidate() {
+			++version;
+			proposals = null;
+		}
+
+		/**
+		 * Gets the cached proposals that are valid at the given offset.
+		 *
+		 * @return The proposals or <code>null</code> if they need to be computed.
+		 */
+		public synchronized ICompletionProposal[] get(IDocument document, int offset) {
+			if (proposals == null || offset < invocationOffset || offset > typedEnd) {
+				++missCount;
+				return null;
+			}
+			++hitCount;
+			if (offset == invocationOffset) {
+				return proposals.clone();
+			}
+			List<ICompletionProposal> result = new ArrayList<>(proposals.length);
+			for (ICompletionProposal p : proposals) {
+				if (!(p instanceof ICompletionProposalExtension2)
+						|| ((ICompletionProposalExtension2) p).validate(document, offset, null)) {
+					result.add(p);
+				}
+			}
+			return result.toArray(new ICompletionProposal[result.size()]);
+		}
+
+		/**
+		 * Caches the proposals computed at the given offset.
+		 * <p>
+		 * The proposals are not cached if the document was modified since the argument version was retrieved.
+		 */
+		public synchronized void put(long version, int offset, ICompletionProposal[] proposals) {
+			if (this.version != version) {
+				return;
+			}
+			int anchor = offset;
+			for (ICompletionProposal p : proposals) {
+				if (p instanceof InsertOnlyCompletionProposal) {
+					int poffset = ((InsertOnlyCompletionProposal) p).getReplacementOffset();
+					if (poffset >= 0 && poffset < anchor) {
+						anchor = poffset;
+					}
+				}
+			}
+			this.proposals = proposals;
+			this.anchor = anchor;
+			this.invocationOffset = offset;
+			this.typedEnd = offset;
+		}
+
+		public synchronized long getHitCount() {
+			return hitCount;
+		}
+
+		public synchronized long getMissCount() {
+			return missCount;
+		}
+	}
+
 	private final class OutlineSelectionUpdaterTimerTask extends TimerTask {
 		@Override
 		public void run() {
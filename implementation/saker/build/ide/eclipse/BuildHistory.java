@@ -0,0 +1,326 @@
+/*
+ * Copyright (C) 2020 Bence Sipka
+ *
+ * This program is free software: you can redistribute it and/or modify 
+ * it under the terms of the GNU General Public License as published by 
+ * the Free Software Foundation, version 3.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package saker.build.ide.eclipse;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+
+/**
+ * Append-only history of the builds of a project.
+ * <p>
+ * Each build is recorded as a tab separated line in the history file. The file is renamed with a <code>.old</code>
+ * suffix when it exceeds a size limit, so the history of the previous period is still available.
+ */
+public final class BuildHistory {
+	private static final String HISTORY_FILE_NAME = "build_history.txt";
+	private static final String OLD_FILE_SUFFIX = ".old";
+	private static final String OLD_HISTORY_FILE_NAME = HISTORY_FILE_NAME + OLD_FILE_SUFFIX;
+	/**
+	 * The size of the history files above which they are rolled over.
+	 */
+	private static final long HISTORY_FILE_ROLL_SIZE = 1024 * 1024;
+	private static final String NULL_FIELD = "-";
+	private static final int FIELD_COUNT = 8;
+	private static final String RESULT_KIND_INITIALIZATION_ERROR = "INITIALIZATION_ERROR";
+
+	/**
+	 * The number of previous builds that the last build duration is compared to.
+	 */
+	private static final int REGRESSION_WINDOW = 10;
+	private static final int REGRESSION_MIN_PREVIOUS_BUILDS = 3;
+	/**
+	 * The ratio to the median of the previous builds above which the last build is considered as a regression.
+	 */
+	private static final double REGRESSION_RATIO = 1.5;
+	/**
+	 * The minimum milliseconds that the last build needs to be slower than the median to be considered as a
+	 * regression.
+	 */
+	private static final long REGRESSION_MIN_DIFFERENCE_MILLIS = 1000;
+
+	public static final class Entry {
+		protected final String scriptPath;
+		protected final String targetName;
+		protected final String parameterizedTargetUuid;
+		protected final long startMillis;
+		protected final long finishMillis;
+		protected final String resultKind;
+		protected final long buildMillis;
+		protected final long ideOverheadMillis;
+
+		public Entry(String scriptPath, String targetName, String parameterizedTargetUuid, long startMillis,
+				long finishMillis, String resultKind, long buildMillis, long ideOverheadMillis) {
+			Objects.requireNonNull(scriptPath, "script path");
+			Objects.requireNonNull(targetName, "target name");
+			this.scriptPath = scriptPath;
+			this.targetName = targetName;
+			this.parameterizedTargetUuid = parameterizedTargetUuid;
+			this.startMillis = startMillis;
+			this.finishMillis = finishMillis;
+			this.resultKind = resultKind;
+			this.buildMillis = buildMillis;
+			this.ideOverheadMillis = ideOverheadMillis;
+		}
+
+		public String getScriptPath() {
+			return scriptPath;
+		}
+
+		public String getTargetName() {
+			return targetName;
+		}
+
+		/**
+		 * @return The UUID or <code>null</code> if the build wasn't started for a parameterized target.
+		 */
+		public String getParameterizedTargetUuid() {
+			return parameterizedTargetUuid;
+		}
+
+		public long getStartMillis() {
+			return startMillis;
+		}
+
+		public long getFinishMillis() {
+			return finishMillis;
+		}
+
+		public long getDurationMillis() {
+			return finishMillis - startMillis;
+		}
+
+		/**
+		 * Gets the time spent on the build itself, including the IDE overhead.
+		 * <p>
+		 * Unlike {@link #getDurationMillis()}, this doesn't include the time the build spent waiting for other builds
+		 * to finish, therefore it should be used when builds are compared to each other.
+		 */
+		public long getMeasuredMillis() {
+			return buildMillis + ideOverheadMillis;
+		}
+
+		public String getResultKind() {
+			return resultKind;
+		}
+
+		public long getBuildMillis() {
+			return buildMillis;
+		}
+
+		public long getIDEOverheadMillis() {
+			return ideOverheadMillis;
+		}
+
+		public String getDisplayName() {
+			return targetName + "@" + scriptPath;
+		}
+
+		protected String getTargetKey() {
+			return scriptPath + "\t" + targetName + "\t" + parameterizedTargetUuid;
+		}
+
+		protected String toLine() {
+			return escapeField(scriptPath) + "\t" + escapeField(targetName) + "\t"
+					+ escapeField(parameterizedTargetUuid) + "\t" + startMillis + "\t" + finishMillis + "\t"
+					+ escapeField(resultKind) + "\t" + buildMillis + "\t" + ideOverheadMillis;
+		}
+
+		protected static Entry parse(String line) {
+			String[] fields = line.split("\t", -1);
+			if (fields.length < FIELD_COUNT) {
+				return null;
+			}
+			try {
+				return new Entry(fields[0], fields[1], unescapeField(fields[2]), Long.parseLong(fields[3]),
+						Long.parseLong(fields[4]), unescapeField(fields[5]), Long.parseLong(fields[6]),
+						Long.parseLong(fields[7]));
+			} catch (NumberFormatException e) {
+				return null;
+			}
+		}
+
+		@Override
+		public String toString() {
+			return getClass().getSimpleName() + "[" + toLine() + "]";
+		}
+	}
+
+	/**
+	 * The build durations of a target in chronological order.
+	 */
+	public static final class TargetTrend {
+		protected final String projectName;
+		protected final List<Entry> entries;
+
+		public TargetTrend(String projectName, List<Entry> entries) {
+			this.projectName = projectName;
+			this.entries = entries;
+		}
+
+		public String getProjectName() {
+			return projectName;
+		}
+
+		public String getDisplayName() {
+			Entry last = getLastEntry();
+			return last.getDisplayName();
+		}
+
+		public List<Entry> getEntries() {
+			return entries;
+		}
+
+		public Entry getLastEntry() {
+			return entries.get(entries.size() - 1);
+		}
+
+		/**
+		 * Gets the median duration of the builds before the last one.
+		 * 
+		 * @return The median, or -1 if there are not enough previous builds.
+		 */
+		public long getPreviousMedianMillis() {
+			int end = entries.size() - 1;
+			int start = Math.max(0, end - REGRESSION_WINDOW);
+			if (end - start < REGRESSION_MIN_PREVIOUS_BUILDS) {
+				return -1;
+			}
+			long[] durations = new long[end - start];
+			for (int i = start; i < end; i++) {
+				durations[i - start] = entries.get(i).getMeasuredMillis();
+			}
+			Arrays.sort(durations);
+			return durations[durations.length / 2];
+		}
+
+		/**
+		 * Checks if the last build took significantly longer than the median of the previous builds.
+		 */
+		public boolean isRegression() {
+			long median = getPreviousMedianMillis();
+			if (median < 0) {
+				return false;
+			}
+			long last = getLastEntry().getMeasuredMillis();
+			return last - median >= REGRESSION_MIN_DIFFERENCE_MILLIS && last > median * REGRESSION_RATIO;
+		}
+	}
+
+	private final Object lock = new Object();
+	private final Path directory;
+
+	public BuildHistory(Path directory) {
+		this.directory = directory;
+	}
+
+	public void append(Entry entry) throws IOException {
+		synchronized (lock) {
+			appendToRollingFile(directory.resolve(HISTORY_FILE_NAME), entry.toLine() + "\n");
+		}
+	}
+
+	/**
+	 * Appends the content to a history file, and rolls it over first if it exceeds the size limit.
+	 * <p>
+	 * The file is rolled over by renaming it with a <code>.old</code> suffix, overwriting the previous one. The caller
+	 * should synchronize the access to the file.
+	 */
+	static void appendToRollingFile(Path file, String content) throws IOException {
+		try {
+			if (Files.size(file) > HISTORY_FILE_ROLL_SIZE) {
+				Files.move(file, file.resolveSibling(file.getFileName() + OLD_FILE_SUFFIX),
+						StandardCopyOption.REPLACE_EXISTING);
+			}
+		} catch (NoSuchFileException e) {
+		}
+		try (Writer writer = Files.newBufferedWriter(file, StandardCharsets.UTF_8, StandardOpenOption.CREATE,
+				StandardOpenOption.APPEND)) {
+			writer.write(content);
+		}
+	}
+
+	/**
+	 * Reads the recorded builds in chronological order. Malformed lines are skipped.
+	 */
+	public List<Entry> read() throws IOException {
+		List<Entry> result = new ArrayList<>();
+		synchronized (lock) {
+			readFile(directory.resolve(OLD_HISTORY_FILE_NAME), result);
+			readFile(directory.resolve(HISTORY_FILE_NAME), result);
+		}
+		return result;
+	}
+
+	/**
+	 * Groups the entries by their build targets.
+	 * 
+	 * @return The trends in the order of the first build of the targets.
+	 */
+	public static List<TargetTrend> getTargetTrends(String projectname, List<Entry> entries) {
+		Map<String, List<Entry>> targetentries = new LinkedHashMap<>();
+		for (Entry e : entries) {
+			if (RESULT_KIND_INITIALIZATION_ERROR.equals(e.getResultKind())) {
+				//the build wasn't executed, the duration is not meaningful
+				continue;
+			}
+			targetentries.computeIfAbsent(e.getTargetKey(), k -> new ArrayList<>()).add(e);
+		}
+		List<TargetTrend> result = new ArrayList<>(targetentries.size());
+		for (List<Entry> tentries : targetentries.values()) {
+			result.add(new TargetTrend(projectname, tentries));
+		}
+		return result;
+	}
+
+	private static void readFile(Path file, List<Entry> result) throws IOException {
+		try (BufferedReader reader = Files.newBufferedReader(file, StandardCharsets.UTF_8)) {
+			for (String line; (line = reader.readLine()) != null;) {
+				Entry entry = Entry.parse(line);
+				if (entry != null) {
+					result.add(entry);
+				}
+			}
+		} catch (NoSuchFileException e) {
+		}
+	}
+
+	private static String escapeField(String field) {
+		if (field == null) {
+			return NULL_FIELD;
+		}
+		return field.replace('\t', ' ').replace('\n', ' ').replace('\r', ' ');
+	}
+
+	private static String unescapeField(String field) {
+		if (NULL_FIELD.equals(field)) {
+			return null;
+		}
+		return field;
+	}
+}
@@ -0,0 +1,257 @@
+/*
+ * Copyright (C) 2020 Bence Sipka
+ *
+ * This program is free software: you can redistribute it and/or modify 
+ * it under the terms of the GNU General Public License as published by 
+ * the Free Software Foundation, version 3.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package saker.build.ide.eclipse;
+
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.List;
+import java.util.function.Function;
+
+import org.eclipse.core.resources.IProject;
+import org.eclipse.core.resources.ResourcesPlugin;
+import org.eclipse.core.runtime.IPath;
+import org.eclipse.core.runtime.IProgressMonitor;
+import org.eclipse.core.runtime.IStatus;
+import org.eclipse.core.runtime.Status;
+import org.eclipse.core.runtime.jobs.Job;
+import org.eclipse.jface.action.Action;
+import org.eclipse.jface.action.IToolBarManager;
+import org.eclipse.jface.viewers.ArrayContentProvider;
+import org.eclipse.jface.viewers.ColumnLabelProvider;
+import org.eclipse.jface.viewers.IStructuredSelection;
+import org.eclipse.jface.viewers.TableViewer;
+import org.eclipse.jface.viewers.TableViewerColumn;
+import org.eclipse.swt.SWT;
+import org.eclipse.swt.custom.SashForm;
+import org.eclipse.swt.events.PaintEvent;
+import org.eclipse.swt.graphics.Color;
+import org.eclipse.swt.graphics.GC;
+import org.eclipse.swt.graphics.Rectangle;
+import org.eclipse.swt.widgets.Canvas;
+import org.eclipse.swt.widgets.Composite;
+import org.eclipse.swt.widgets.Display;
+import org.eclipse.swt.widgets.Table;
+import org.eclipse.ui.ISharedImages;
+import org.eclipse.ui.PlatformUI;
+import org.eclipse.ui.part.ViewPart;
+
+import saker.build.ide.eclipse.BuildHistory.Entry;
+import saker.build.ide.eclipse.BuildHistory.TargetTrend;
+import saker.build.runtime.execution.SakerLog;
+import saker.build.thirdparty.saker.util.DateUtils;
+
+/**
+ * View that displays the build duration trends of the build targets in the saker.build projects of the workspace.
+ * <p>
+ * The targets are listed in a table, and the durations of the recorded builds are charted for the selected target.
+ * The targets are flagged if their last build was significantly slower than the previous ones.
+ */
+public class BuildHistoryView extends ViewPart {
+	public static final String ID = Activator.PLUGIN_ID + ".BuildHistoryView";
+
+	/**
+	 * The maximum number of builds that are displayed in the chart.
+	 */
+	private static final int CHART_BUILD_COUNT = 50;
+	private static final int CHART_MARGIN = 8;
+
+	private TableViewer viewer;
+	private Canvas chart;
+	private TargetTrend selectedTrend;
+
+	@Override
+	public void createPartControl(Composite parent) {
+		SashForm sash = new SashForm(parent, SWT.VERTICAL);
+
+		viewer = new TableViewer(sash, SWT.SINGLE | SWT.FULL_SELECTION | SWT.BORDER);
+		Table table = viewer.getTable();
+		table.setHeaderVisible(true);
+		table.setLinesVisible(true);
+		viewer.setContentProvider(ArrayContentProvider.getInstance());
+
+		createColumn("Target", 260, TargetTrend::getDisplayName);
+		createColumn("Project", 140, TargetTrend::getProjectName);
+		createColumn("Builds", 60, t -> Integer.toString(t.getEntries().size()));
+		createColumn("Last build", 180, t -> new Date(t.getLastEntry().getStartMillis()).toString());
+		createColumn("Last duration", 100, t -> DateUtils.durationToString(t.getLastEntry().getMeasuredMillis()));
+		createColumn("IDE overhead", 100,
+				t -> DateUtils.durationToString(t.getLastEntry().getIDEOverheadMillis()));
+		createColumn("Median", 100, t -> {
+			long median = t.getPreviousMedianMillis();
+			return median < 0 ? "" : DateUtils.durationToString(median);
+		});
+		createColumn("Status", 100, t -> t.isRegression() ? "Regression" : "");
+
+		viewer.addSelectionChangedListener(event -> {
+			Object selected = ((IStructuredSelection) event.getSelection()).getFirstElement();
+			selectedTrend = (TargetTrend) selected;
+			chart.redraw();
+		});
+
+		chart = new Canvas(sash, SWT.DOUBLE_BUFFERED | SWT.BORDER);
+		chart.addPaintListener(this::paintChart);
+
+		sash.setWeights(new int[] { 60, 40 });
+
+		IToolBarManager tbm = getViewSite().getActionBars().getToolBarManager();
+		Action refreshaction = new Action("Refresh", PlatformUI.getWorkbench().getSharedImages()
+				.getImageDescriptor(ISharedImages.IMG_ELCL_SYNCED)) {
+			@Override
+			public void run() {
+				refresh();
+			}
+		};
+		tbm.add(refreshaction);
+
+		refresh();
+	}
+
+	@Override
+	public void setFocus() {
+		viewer.getControl().setFocus();
+	}
+
+	/**
+	 * Reads the build histories of the projects in the background, and displays them.
+	 * <p>
+	 * The projects are not loaded for saker.build by this method, the history of the unloaded projects are read
+	 * directly from their working locations.
+	 */
+	public void refresh() {
+		Display display = viewer.getControl().getDisplay();
+		Job job = new Job("Reading build history") {
+			@Override
+			protected IStatus run(IProgressMonitor monitor) {
+				List<TargetTrend> trends = new ArrayList<>();
+				ImplActivator activator = ImplActivator.getDefault();
+				if (activator != null) {
+					EclipseSakerIDEPlugin plugin = activator.getEclipseIDEPlugin();
+					for (IProject project : ResourcesPlugin.getWorkspace().getRoot().getProjects()) {
+						try {
+							if (!project.isOpen() || !project.isNatureEnabled(SakerBuildProjectNature.NATURE_ID)) {
+								continue;
+							}
+							BuildHistory history = getBuildHistory(plugin, project);
+							if (history == null) {
+								continue;
+							}
+							trends.addAll(BuildHistory.getTargetTrends(project.getName(), history.read()));
+						} catch (Exception e) {
+							EclipseSakerIDEPlugin.displayException(plugin, SakerLog.SEVERITY_WARNING,
+									"Failed to read build history of project: " + project.getName(), e);
+						}
+					}
+				}
+				display.asyncExec(() -> {
+					if (viewer.getControl().isDisposed()) {
+						return;
+					}
+					selectedTrend = null;
+					viewer.setInput(trends);
+					chart.redraw();
+				});
+				return Status.OK_STATUS;
+			}
+		};
+		job.setSystem(true);
+		job.schedule();
+	}
+
+	private static BuildHistory getBuildHistory(EclipseSakerIDEPlugin plugin, IProject project) {
+		EclipseSakerIDEProject sakerproject = plugin == null ? null : plugin.getLoadedProject(project);
+		if (sakerproject != null) {
+			//use the history of the loaded project so the reading is synchronized with the builds
+			return sakerproject.getBuildHistory();
+		}
+		IPath location = project.getWorkingLocation(Activator.PLUGIN_ID);
+		if (location == null) {
+			return null;
+		}
+		return new BuildHistory(location.toFile().toPath());
+	}
+
+	private void createColumn(String title, int width, Function<TargetTrend, String> text) {
+		TableViewerColumn column = new TableViewerColumn(viewer, SWT.NONE);
+		column.getColumn().setText(title);
+		column.getColumn().setWidth(width);
+		column.setLabelProvider(new ColumnLabelProvider() {
+			@Override
+			public String getText(Object element) {
+				return text.apply((TargetTrend) element);
+			}
+
+			@Override
+			public Color getForeground(Object element) {
+				if (((TargetTrend) element).isRegression()) {
+					return viewer.getControl().getDisplay().getSystemColor(SWT.COLOR_RED);
+				}
+				return null;
+			}
+		});
+	}
+
+	private void paintChart(PaintEvent event) {
+		GC gc = event.gc;
+		Rectangle area = chart.getClientArea();
+		TargetTrend trend = selectedTrend;
+		Display display = chart.getDisplay();
+		if (trend == null) {
+			gc.drawText("Select a build target to display its build durations.", CHART_MARGIN, CHART_MARGIN, true);
+			return;
+		}
+		List<Entry> entries = trend.getEntries();
+		int start = Math.max(0, entries.size() - CHART_BUILD_COUNT);
+		int count = entries.size() - start;
+		long max = 1;
+		for (int i = start; i < entries.size(); i++) {
+			max = Math.max(max, entries.get(i).getMeasuredMillis());
+		}
+		int textheight = gc.getFontMetrics().getHeight();
+		gc.drawText(trend.getDisplayName() + " (max: " + DateUtils.durationToString(max) + ")", CHART_MARGIN,
+				CHART_MARGIN, true);
+
+		int top = CHART_MARGIN * 2 + textheight;
+		int height = area.height - top - CHART_MARGIN;
+		int width = area.width - CHART_MARGIN * 2;
+		if (height <= 0 || width <= 0) {
+			return;
+		}
+		int barwidth = Math.max(1, width / CHART_BUILD_COUNT);
+		int bottom = top + height;
+		boolean regression = trend.isRegression();
+		for (int i = 0; i < count; i++) {
+			Entry entry = entries.get(start + i);
+			int x = CHART_MARGIN + i * barwidth;
+			int totalheight = (int) (height * entry.getMeasuredMillis() / max);
+			int buildheight = (int) (height * Math.min(entry.getBuildMillis(), entry.getMeasuredMillis()) / max);
+			boolean last = i == count - 1;
+			//the build execution part of the bar
+			gc.setBackground(display.getSystemColor(
+					last && regression ? SWT.COLOR_RED : SWT.COLOR_LIST_SELECTION));
+			gc.fillRectangle(x, bottom - buildheight, Math.max(1, barwidth - 1), buildheight);
+			//the IDE overhead part of the bar
+			gc.setBackground(display.getSystemColor(SWT.COLOR_DARK_GRAY));
+			gc.fillRectangle(x, bottom - totalheight, Math.max(1, barwidth - 1), totalheight - buildheight);
+		}
+		long median = trend.getPreviousMedianMillis();
+		if (median >= 0) {
+			int y = bottom - (int) (height * median / max);
+			gc.setForeground(display.getSystemColor(SWT.COLOR_DARK_GREEN));
+			gc.setLineStyle(SWT.LINE_DASH);
+			gc.drawLine(CHART_MARGIN, y, CHART_MARGIN + count * barwidth, y);
+		}
+	}
+}
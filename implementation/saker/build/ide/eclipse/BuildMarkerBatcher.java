@@ -0,0 +1,482 @@
+/*
+ * Copyright (C) 2020 Bence Sipka
+ *
+ * This program is free software: you can redistribute it and/or modify 
+ * it under the terms of the GNU General Public License as published by 
+ * the Free Software Foundation, version 3.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package saker.build.ide.eclipse;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.Charset;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Map.Entry;
+import java.util.Objects;
+import java.util.Set;
+
+import org.eclipse.core.resources.IFile;
+import org.eclipse.core.resources.IMarker;
+import org.eclipse.core.resources.IWorkspace;
+import org.eclipse.core.resources.IWorkspaceRunnable;
+import org.eclipse.core.resources.ResourcesPlugin;
+import org.eclipse.core.runtime.CoreException;
+import org.eclipse.core.runtime.IProgressMonitor;
+import org.eclipse.core.runtime.IStatus;
+import org.eclipse.core.runtime.Status;
+import org.eclipse.core.runtime.jobs.Job;
+
+import saker.build.runtime.execution.SakerLog;
+import saker.build.thirdparty.saker.util.io.StreamUtils;
+
+/**
+ * Collects the problem markers found in the build output, and creates them in batches.
+ * <p>
+ * The markers are created in a single workspace operation per batch, so the resource change notifications are not
+ * sent for each marker separately. A batch is flushed after the configured interval passes since the first marker
+ * was added to it, or immediately if it reaches the configured size.
+ * <p>
+ * The created markers are indexed per build target and per file. When a build of a target finishes, the markers of
+ * the previous build of the same target are reconciled with the newly reported ones: markers that are reported again
+ * are kept, and the ones that are no longer reported are deleted. This avoids deleting and recreating all markers of
+ * the project for every build.
+ * <p>
+ * The markers that were created before the index was {@linkplain #reset() reset} (e.g. in a previous session) are not
+ * tracked, and need to be deleted by the caller.
+ */
+public final class BuildMarkerBatcher {
+	private static final String[] MARKER_ATTRIBUTE_NAMES = { IMarker.SEVERITY, IMarker.LINE_NUMBER, IMarker.MESSAGE };
+	private static final String[] MARKER_RANGE_ATTRIBUTE_NAMES = { IMarker.SEVERITY, IMarker.LINE_NUMBER,
+			IMarker.MESSAGE, IMarker.CHAR_START, IMarker.CHAR_END };
+	private static final int[] NO_LINE_OFFSETS = {};
+
+	/**
+	 * The milliseconds to wait before creating the collected markers. Can be configured with the
+	 * <code>saker.build.ide.eclipse.build.marker.flush.interval</code> system property.
+	 */
+	private static final int FLUSH_INTERVAL_MILLIS = Integer
+			.getInteger(Activator.PLUGIN_ID + ".build.marker.flush.interval", 200);
+	/**
+	 * The number of collected markers that causes them to be created without waiting for the flush interval. Can be
+	 * configured with the <code>saker.build.ide.eclipse.build.marker.flush.size</code> system property.
+	 */
+	private static final int FLUSH_SIZE = Integer.getInteger(Activator.PLUGIN_ID + ".build.marker.flush.size", 500);
+
+	public static final class MarkerDescriptor {
+		protected final IFile file;
+		protected final int lineNumber;
+		protected final int startColumn;
+		protected final int endColumn;
+		protected final int severity;
+		protected final String message;
+
+		public MarkerDescriptor(IFile file, int lineNumber, int severity, String message) {
+			this(file, lineNumber, -1, -1, severity, message);
+		}
+
+		/**
+		 * Creates a new instance.
+		 * <p>
+		 * The columns are 1 based, and the end column is inclusive. They are -1 if not available.
+		 */
+		public MarkerDescriptor(IFile file, int lineNumber, int startColumn, int endColumn, int severity,
+				String message) {
+			Objects.requireNonNull(file, "file");
+			this.file = file;
+			this.lineNumber = lineNumber;
+			this.startColumn = startColumn;
+			this.endColumn = endColumn;
+			this.severity = severity;
+			this.message = message;
+		}
+
+		public IFile getFile() {
+			return file;
+		}
+
+		public int getLineNumber() {
+			return lineNumber;
+		}
+
+		public int getStartColumn() {
+			return startColumn;
+		}
+
+		public int getEndColumn() {
+			return endColumn;
+		}
+
+		public int getSeverity() {
+			return severity;
+		}
+
+		public String getMessage() {
+			return message;
+		}
+
+		@Override
+		public int hashCode() {
+			final int prime = 31;
+			int result = 1;
+			result = prime * result + endColumn;
+			result = prime * result + file.hashCode();
+			result = prime * result + lineNumber;
+			result = prime * result + ((message == null) ? 0 : message.hashCode());
+			result = prime * result + severity;
+			result = prime * result + startColumn;
+			return result;
+		}
+
+		@Override
+		public boolean equals(Object obj) {
+			if (this == obj)
+				return true;
+			if (obj == null)
+				return false;
+			if (getClass() != obj.getClass())
+				return false;
+			MarkerDescriptor other = (MarkerDescriptor) obj;
+			return file.equals(other.file) && lineNumber == other.lineNumber && startColumn == other.startColumn
+					&& endColumn == other.endColumn && severity == other.severity
+					&& Objects.equals(message, other.message);
+		}
+
+		@Override
+		public String toString() {
+			return getClass().getSimpleName() + "[" + file + ":" + lineNumber + ":" + startColumn + "-" + endColumn
+					+ " (" + severity + "): " + message + "]";
+		}
+	}
+
+	private static final class TargetMarkers {
+		/**
+		 * The markers created for the last finished build of the target.
+		 */
+		protected Map<IFile, Map<MarkerDescriptor, IMarker>> markers = new HashMap<>();
+		/**
+		 * The markers created for the currently running build, or <code>null</code> if not building.
+		 */
+		protected Map<IFile, Map<MarkerDescriptor, IMarker>> current;
+		/**
+		 * The descriptors reported by the current or last build.
+		 */
+		protected Set<MarkerDescriptor> reported = new HashSet<>();
+		protected boolean ended;
+		/**
+		 * Incremented when the maps of the target are replaced by a new build or a reset.
+		 */
+		protected int generation;
+
+		public Map<IFile, Map<MarkerDescriptor, IMarker>> getReportMarkers() {
+			return current == null ? markers : current;
+		}
+	}
+
+	private static final class PendingMarker {
+		protected final TargetMarkers target;
+		protected final int generation;
+		protected final MarkerDescriptor descriptor;
+		/**
+		 * The marker created by the previous build for the same descriptor, if any.
+		 */
+		protected IMarker previous;
+		protected IMarker marker;
+
+		public PendingMarker(TargetMarkers target, MarkerDescriptor descriptor) {
+			this.target = target;
+			this.generation = target.generation;
+			this.descriptor = descriptor;
+		}
+	}
+
+	private final Object lock = new Object();
+	private List<PendingMarker> pending = new ArrayList<>();
+	private final Map<Object, TargetMarkers> targetMarkers = new HashMap<>();
+	private List<IMarker> staleMarkers = new ArrayList<>();
+	private boolean tracking = false;
+
+	private final Job flushJob;
+
+	public BuildMarkerBatcher(EclipseSakerIDEProject project) {
+		this.flushJob = new Job("Creating build markers") {
+			@Override
+			protected IStatus run(IProgressMonitor monitor) {
+				try {
+					flush(monitor);
+				} catch (CoreException e) {
+					project.displayException(SakerLog.SEVERITY_WARNING, "Failed to create build markers for project: "
+							+ project.getProject().getName(), e);
+				}
+				return Status.OK_STATUS;
+			}
+		};
+		this.flushJob.setSystem(true);
+	}
+
+	/**
+	 * Starts collecting the markers for a build of the given target.
+	 * <p>
+	 * If the previous build of the same target wasn't reconciled yet, it is reconciled now. The markers of the previous
+	 * build that are still waiting to be created are discarded, as they are superseded by the new build.
+	 * 
+	 * @param target
+	 *            The key of the build target.
+	 * @return <code>true</code> if the markers of the project are tracked. If <code>false</code>, the caller should
+	 *             delete the problem markers of the project, and {@linkplain #reset() reset} the batcher.
+	 */
+	public boolean startBuild(Object target) {
+		synchronized (lock) {
+			TargetMarkers tm = targetMarkers.computeIfAbsent(target, k -> new TargetMarkers());
+			//drop the pending markers of the previous build, otherwise they would be attributed to the new build
+			//after the maps are swapped, and duplicated if the new build reports them again
+			pending.removeIf(pm -> pm.target == tm);
+			if (tm.current != null) {
+				reconcileLocked(tm);
+			}
+			tm.current = new HashMap<>();
+			tm.reported = new HashSet<>();
+			tm.ended = false;
+			++tm.generation;
+			return tracking;
+		}
+	}
+
+	/**
+	 * Signals that the build of the given target has finished.
+	 * <p>
+	 * The markers of the target are reconciled after the flush interval, so the build output that is still processed
+	 * by the console is taken into account.
+	 * 
+	 * @param target
+	 *            The key of the build target.
+	 */
+	public void endBuild(Object target) {
+		synchronized (lock) {
+			TargetMarkers tm = targetMarkers.get(target);
+			if (tm == null || tm.current == null) {
+				return;
+			}
+			tm.ended = true;
+		}
+		flushJob.schedule(FLUSH_INTERVAL_MILLIS);
+	}
+
+	/**
+	 * Adds a marker to be created.
+	 * <p>
+	 * If the marker was created by the previous build of the target, it is kept instead of creating a new one.
+	 * 
+	 * @param target
+	 *            The key of the build target that reported the marker.
+	 * @param marker
+	 *            The marker.
+	 * @return <code>true</code> if the marker was added, <code>false</code> if an identical marker was already added,
+	 *             or no build was started for the target.
+	 */
+	public boolean add(Object target, MarkerDescriptor marker) {
+		boolean schedule;
+		boolean flushnow;
+		synchronized (lock) {
+			TargetMarkers tm = targetMarkers.get(target);
+			if (tm == null) {
+				//no build was started for the target
+				return false;
+			}
+			if (!tm.reported.add(marker)) {
+				return false;
+			}
+			pending.add(new PendingMarker(tm, marker));
+			schedule = pending.size() == 1;
+			flushnow = pending.size() >= FLUSH_SIZE;
+		}
+		if (schedule) {
+			flushJob.schedule(FLUSH_INTERVAL_MILLIS);
+		}
+		if (flushnow) {
+			flushJob.wakeUp();
+		}
+		return true;
+	}
+
+	/**
+	 * Discards the pending markers and forgets the indexed ones.
+	 * <p>
+	 * Should be called when all the problem markers are deleted from the project. The markers are tracked afterwards.
+	 */
+	public void reset() {
+		synchronized (lock) {
+			pending.clear();
+			staleMarkers.clear();
+			for (TargetMarkers tm : targetMarkers.values()) {
+				tm.markers = new HashMap<>();
+				if (tm.current != null) {
+					tm.current = new HashMap<>();
+				}
+				tm.reported = new HashSet<>();
+				++tm.generation;
+			}
+			tracking = true;
+		}
+	}
+
+	private void flush(IProgressMonitor monitor) throws CoreException {
+		IWorkspaceRunnable runnable = m -> {
+			List<PendingMarker> batch;
+			synchronized (lock) {
+				batch = pending;
+				pending = new ArrayList<>();
+				for (PendingMarker pm : batch) {
+					Map<MarkerDescriptor, IMarker> prevfilemarkers = pm.target.markers.get(pm.descriptor.file);
+					if (prevfilemarkers != null) {
+						pm.previous = prevfilemarkers.get(pm.descriptor);
+					}
+				}
+			}
+			//the files are read and the markers are created without locking, so adding the markers by the build
+			//output processing is not blocked by them
+			Map<IFile, int[]> filelineoffsets = new HashMap<>();
+			for (PendingMarker pm : batch) {
+				pm.marker = createMarker(pm, filelineoffsets);
+			}
+			IMarker[] deletemarkers;
+			synchronized (lock) {
+				for (PendingMarker pm : batch) {
+					IMarker marker = pm.marker;
+					if (marker == null) {
+						continue;
+					}
+					TargetMarkers tm = pm.target;
+					if (tm.generation != pm.generation) {
+						//the build was superseded or the markers were reset while the marker was being created
+						if (marker != pm.previous) {
+							staleMarkers.add(marker);
+						}
+						continue;
+					}
+					tm.getReportMarkers().computeIfAbsent(pm.descriptor.file, k -> new HashMap<>())
+							.put(pm.descriptor, marker);
+				}
+				for (TargetMarkers tm : targetMarkers.values()) {
+					if (tm.ended && tm.current != null) {
+						reconcileLocked(tm);
+					}
+				}
+				if (staleMarkers.isEmpty()) {
+					return;
+				}
+				deletemarkers = staleMarkers.toArray(new IMarker[staleMarkers.size()]);
+				staleMarkers = new ArrayList<>();
+			}
+			try {
+				ResourcesPlugin.getWorkspace().deleteMarkers(deletemarkers);
+			} catch (CoreException e) {
+				//some markers may have been removed meanwhile
+			}
+		};
+		ResourcesPlugin.getWorkspace().run(runnable, null, IWorkspace.AVOID_UPDATE, monitor);
+	}
+
+	/**
+	 * Creates the marker for the pending descriptor, or returns the marker of the previous build if it still exists.
+	 * 
+	 * @return The marker or <code>null</code> if it couldn't be created.
+	 */
+	private static IMarker createMarker(PendingMarker pm, Map<IFile, int[]> filelineoffsets) {
+		if (pm.previous != null && pm.previous.exists()) {
+			//the same diagnostic was reported by the previous build, keep it
+			return pm.previous;
+		}
+		MarkerDescriptor descriptor = pm.descriptor;
+		IFile file = descriptor.file;
+		try {
+			int charstart = -1;
+			if (descriptor.startColumn > 0 && descriptor.endColumn >= descriptor.startColumn
+					&& descriptor.lineNumber > 0) {
+				int[] lineoffsets = filelineoffsets.computeIfAbsent(file, BuildMarkerBatcher::readLineOffsets);
+				if (descriptor.lineNumber <= lineoffsets.length) {
+					charstart = lineoffsets[descriptor.lineNumber - 1] + descriptor.startColumn - 1;
+				}
+			}
+			IMarker marker = file.createMarker(ProjectBuilder.MARKER_TYPE);
+			if (charstart >= 0) {
+				marker.setAttributes(MARKER_RANGE_ATTRIBUTE_NAMES,
+						new Object[] { descriptor.severity, descriptor.lineNumber, descriptor.message, charstart,
+								charstart + descriptor.endColumn - descriptor.startColumn + 1 });
+			} else {
+				marker.setAttributes(MARKER_ATTRIBUTE_NAMES,
+						new Object[] { descriptor.severity, descriptor.lineNumber, descriptor.message });
+			}
+			return marker;
+		} catch (CoreException e) {
+			//the file may have been removed meanwhile
+			return null;
+		}
+	}
+
+	/**
+	 * Moves the markers of the previous build that weren't reported by the current one to the stale markers, and
+	 * makes the current markers the finished ones.
+	 */
+	private void reconcileLocked(TargetMarkers tm) {
+		Map<IFile, Map<MarkerDescriptor, IMarker>> current = tm.current;
+		for (Entry<IFile, Map<MarkerDescriptor, IMarker>> entry : tm.markers.entrySet()) {
+			Map<MarkerDescriptor, IMarker> currentfilemarkers = current.get(entry.getKey());
+			for (Entry<MarkerDescriptor, IMarker> markerentry : entry.getValue().entrySet()) {
+				if (currentfilemarkers != null && currentfilemarkers.get(markerentry.getKey()) == markerentry
+						.getValue()) {
+					continue;
+				}
+				staleMarkers.add(markerentry.getValue());
+			}
+		}
+		tm.markers = current;
+		tm.current = null;
+		tm.ended = false;
+	}
+
+	/**
+	 * Reads the character offsets of the line starts in the file.
+	 * 
+	 * @return The offsets, or an empty array if the file couldn't be read.
+	 */
+	private static int[] readLineOffsets(IFile file) {
+		String content;
+		try (InputStream is = file.getContents()) {
+			content = new String(StreamUtils.readStreamFully(is).copyOptionally(), Charset.forName(file.getCharset()));
+		} catch (CoreException | IOException | IllegalArgumentException e) {
+			return NO_LINE_OFFSETS;
+		}
+		int[] result = new int[64];
+		int count = 0;
+		result[count++] = 0;
+		int len = content.length();
+		for (int i = 0; i < len; i++) {
+			char c = content.charAt(i);
+			if (c == '\r') {
+				if (i + 1 < len && content.charAt(i + 1) == '\n') {
+					++i;
+				}
+			} else if (c != '\n') {
+				continue;
+			}
+			if (count == result.length) {
+				result = Arrays.copyOf(result, count * 2);
+			}
+			result[count++] = i + 1;
+		}
+		return Arrays.copyOf(result, count);
+	}
+}
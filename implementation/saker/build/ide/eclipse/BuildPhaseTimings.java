@@ -0,0 +1,165 @@
+/*
+ * Copyright (C) 2020 Bence Sipka
+ *
+ * This program is free software: you can redistribute it and/or modify 
+ * it under the terms of the GNU General Public License as published by 
+ * the Free Software Foundation, version 3.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package saker.build.ide.eclipse;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.Date;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Map.Entry;
+
+import saker.build.thirdparty.saker.util.DateUtils;
+
+/**
+ * Measures the durations of the phases of a build in the IDE.
+ * <p>
+ * Only one phase is measured at a time. Starting a phase ends the previous one. If a phase is measured multiple times,
+ * the durations are summed.
+ */
+public final class BuildPhaseTimings {
+	public static final String PHASE_LOCK_WAIT = "lock wait";
+	public static final String PHASE_PROPERTY_CONTRIBUTION = "property contribution";
+	public static final String PHASE_EXECUTION_PARAMETERS = "execution parameters";
+	public static final String PHASE_DAEMON_ENVIRONMENT = "daemon environment";
+	public static final String PHASE_BUILD = "build";
+	public static final String PHASE_BUILD_DIRECTORY_REFRESH = "build directory refresh";
+	public static final String PHASE_MIRROR_DIRECTORY = "mirror directory";
+	public static final String PHASE_IDE_CONFIGURATION = "IDE configuration";
+	public static final String PHASE_EXCEPTION_PRINTING = "exception printing";
+
+	private static final String HISTORY_FILE_NAME = "build_timings.txt";
+	private static final Object HISTORY_FILE_LOCK = new Object();
+
+	private final long startNanos = System.nanoTime();
+	private final Map<String, Long> phaseNanos = new LinkedHashMap<>();
+	private String currentPhase;
+	private long currentPhaseStartNanos;
+
+	public void start(String phase) {
+		long now = System.nanoTime();
+		endPhase(now);
+		currentPhase = phase;
+		currentPhaseStartNanos = now;
+	}
+
+	public void end() {
+		endPhase(System.nanoTime());
+	}
+
+	public boolean hasPhase(String phase) {
+		return phaseNanos.containsKey(phase) || phase.equals(currentPhase);
+	}
+
+	/**
+	 * Gets the duration of the phase in milliseconds, or 0 if it wasn't measured.
+	 */
+	public long getPhaseMillis(String phase) {
+		Long nanos = phaseNanos.get(phase);
+		return nanos == null ? 0 : nanos / 1_000_000;
+	}
+
+	/**
+	 * Gets the milliseconds elapsed since this instance was created.
+	 */
+	public long getTotalMillis() {
+		return (System.nanoTime() - startNanos) / 1_000_000;
+	}
+
+	/**
+	 * Gets the milliseconds spent by the IDE, excluding the build execution and waiting for other builds.
+	 */
+	public long getIDEOverheadMillis() {
+		return Math.max(0, getTotalMillis() - getPhaseMillis(PHASE_BUILD) - getPhaseMillis(PHASE_LOCK_WAIT));
+	}
+
+	/**
+	 * Creates a single line summary of the timings to be displayed in the build console.
+	 */
+	public String toSummaryString() {
+		end();
+		StringBuilder sb = new StringBuilder();
+		sb.append("Build timings: ");
+		sb.append(DateUtils.durationToString(getTotalMillis()));
+		sb.append(" total, ");
+		sb.append(DateUtils.durationToString(getPhaseMillis(PHASE_BUILD)));
+		sb.append(" build, ");
+		sb.append(DateUtils.durationToString(getIDEOverheadMillis()));
+		sb.append(" IDE overhead (");
+		boolean first = true;
+		for (Entry<String, Long> entry : phaseNanos.entrySet()) {
+			if (entry.getKey().equals(PHASE_BUILD)) {
+				continue;
+			}
+			if (!first) {
+				sb.append(", ");
+			}
+			first = false;
+			sb.append(entry.getKey());
+			sb.append(": ");
+			sb.append(DateUtils.durationToString(entry.getValue() / 1_000_000));
+		}
+		sb.append(')');
+		return sb.toString();
+	}
+
+	/**
+	 * Appends the timings to the rolling history file in the given directory.
+	 * <p>
+	 * The history file is renamed with a <code>.old</code> suffix when it exceeds a size limit, overwriting the
+	 * previous one.
+	 * 
+	 * @param directory
+	 *            The directory of the history file.
+	 * @param project
+	 *            The name of the project.
+	 * @param target
+	 *            The displayed name of the build target.
+	 */
+	public void appendToHistory(Path directory, String project, String target) throws IOException {
+		end();
+		StringBuilder sb = new StringBuilder();
+		sb.append(new Date(System.currentTimeMillis()));
+		sb.append('\t');
+		sb.append(project);
+		sb.append('\t');
+		sb.append(target);
+		sb.append("\ttotal=");
+		sb.append(getTotalMillis());
+		sb.append("\toverhead=");
+		sb.append(getIDEOverheadMillis());
+		for (Entry<String, Long> entry : phaseNanos.entrySet()) {
+			sb.append('\t');
+			sb.append(entry.getKey());
+			sb.append('=');
+			sb.append(entry.getValue() / 1_000_000);
+		}
+		sb.append('\n');
+
+		synchronized (HISTORY_FILE_LOCK) {
+			BuildHistory.appendToRollingFile(directory.resolve(HISTORY_FILE_NAME), sb.toString());
+		}
+	}
+
+	private void endPhase(long now) {
+		String phase = currentPhase;
+		if (phase == null) {
+			return;
+		}
+		currentPhase = null;
+		phaseNanos.merge(phase, now - currentPhaseStartNanos, Long::sum);
+	}
+}
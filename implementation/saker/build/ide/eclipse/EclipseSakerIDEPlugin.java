@@ -31,7 +31,7 @@ import java.util.HashSet;
 import java.util.List;
 import java.util.Map;
 import java.util.NavigableMap;
-import java.util.Objects;
+import java.util.ServiceConfigurationError;
 import java.util.Set;
 import java.util.TreeSet;
 import java.util.UUID;
@@ -94,6 +94,19 @@ public final class EclipseSakerIDEPlugin implements Closeable, ExceptionDisplaye
 			+ "/keystore-passwords";
 
 	private static final String NODE_ARRAY_EXTENSION_DISABLEMENTS = "extension_disablements";
+
+	public static final String SUBSYSTEM_ENVIRONMENT = "plugin environment";
+	public static final String SUBSYSTEM_ENVIRONMENT_PARAMETER_CONTRIBUTORS = "environment parameter contributors";
+	public static final String SUBSYSTEM_PROJECT = "project";
+	public static final String SUBSYSTEM_SCRIPT_MODELLING = "script modelling";
+	public static final String SUBSYSTEM_CONSOLE = "plugin console";
+
+	/**
+	 * Flag for logging the activation of the plugin subsystems, and what caused them.
+	 * <p>
+	 * Can be set using the <code>saker.build.ide.eclipse.trace.startup</code> system property.
+	 */
+	private static final boolean TRACE_STARTUP = Boolean.getBoolean(Activator.PLUGIN_ID + ".trace.startup");
 	private static final String CONFIG_FILE_ROOT_OBJECT_NAME = Activator.PLUGIN_ID + ".plugin.config";
 	private static final String IDE_PLUGIN_PROPERTIES_FILE_NAME = "." + CONFIG_FILE_ROOT_OBJECT_NAME;
 
@@ -103,21 +116,42 @@ public final class EclipseSakerIDEPlugin implements Closeable, ExceptionDisplaye
 	private final Object consoleLock = new Object();
 	private SakerPluginInfoConsole console;
 
+	private Path pluginDirectory;
 	private Path pluginConfigurationFilePath;
 
 	private final Object projectsLock = new Object();
 	private final Map<IProject, EclipseSakerIDEProject> projects = new ConcurrentHashMap<>();
 	private final Object configurationChangeLock = new Object();
-	private List<ContributedExtensionConfiguration<IEnvironmentUserParameterContributor>> environmentParameterContributors = Collections
-			.emptyList();
+	/**
+	 * The environment parameter contributors, or <code>null</code> if they haven't been loaded yet. Guarded by
+	 * {@link #configurationChangeLock}.
+	 */
+	private List<ContributedExtensionConfiguration<IEnvironmentUserParameterContributor>> environmentParameterContributors;
+	private Set<ExtensionDisablement> initialExtensionDisablements = Collections.emptySet();
+
+	private final Object startLock = new Object();
+	private boolean startRequested = false;
+	private long initializeNanos;
+
+	private final ScriptDesignerRegistry<IScriptProposalDesigner> scriptProposalDesigners = new ScriptDesignerRegistry<>(
+			this, Activator.EXTENSION_POINT_ID_SCRIPT_PROPOSAL_DESIGNER, IScriptProposalDesigner.class,
+			MultiScriptProposalDesigner::new);
+	private final ScriptDesignerRegistry<IScriptInformationDesigner> scriptInformationDesigners = new ScriptDesignerRegistry<>(
+			this, Activator.EXTENSION_POINT_ID_SCRIPT_INFORMATION_DESIGNER, IScriptInformationDesigner.class,
+			MultiScriptInformationDesigner::new);
+	private final ScriptDesignerRegistry<IScriptOutlineDesigner> scriptOutlineDesigners = new ScriptDesignerRegistry<>(
+			this, Activator.EXTENSION_POINT_ID_SCRIPT_OUTLINE_DESIGNER, IScriptOutlineDesigner.class,
+			MultiScriptOutlineDesigner::new);
 
 	public EclipseSakerIDEPlugin() {
 		sakerPlugin = new SakerIDEPlugin();
 	}
 
 	public void initialize(Path sakerJarPath, Path plugindirectory) {
+		this.initializeNanos = System.nanoTime();
 		sakerPlugin.addExceptionDisplayer(this);
 
+		this.pluginDirectory = plugindirectory;
 		this.pluginConfigurationFilePath = plugindirectory.resolve(IDE_PLUGIN_PROPERTIES_FILE_NAME);
 
 		Set<ExtensionDisablement> extensiondisablements = new HashSet<>();
@@ -132,10 +166,39 @@ public final class EclipseSakerIDEPlugin implements Closeable, ExceptionDisplaye
 			displayException(SakerLog.SEVERITY_ERROR, "Failed to read saker.build plugin configuration file.", e);
 		}
 
+		IExtensionRegistry extensionregistry = Platform.getExtensionRegistry();
+		for (ScriptDesignerRegistry<?> designers : getScriptDesignerRegistries()) {
+			designers.setExtensionDisablements(extensiondisablements);
+			extensionregistry.addListener(designers, designers.getExtensionPointId());
+		}
+		this.initialExtensionDisablements = extensiondisablements;
+
+		//initialization doesn't fail
+		sakerPlugin.initialize(sakerJarPath, plugindirectory);
+	}
+
+	/**
+	 * Loads the environment parameter contributor extensions if not yet loaded.
+	 * <p>
+	 * The contributors are loaded on first use, as instantiating them activates their contributing plugins.
+	 */
+	private List<ContributedExtensionConfiguration<IEnvironmentUserParameterContributor>> getEnvironmentParameterContributorsLoaded() {
+		synchronized (configurationChangeLock) {
+			if (environmentParameterContributors != null) {
+				return environmentParameterContributors;
+			}
+			traceActivation(SUBSYSTEM_ENVIRONMENT_PARAMETER_CONTRIBUTORS, null);
+			environmentParameterContributors = loadEnvironmentParameterContributors(initialExtensionDisablements);
+			return environmentParameterContributors;
+		}
+	}
+
+	private List<ContributedExtensionConfiguration<IEnvironmentUserParameterContributor>> loadEnvironmentParameterContributors(
+			Set<ExtensionDisablement> extensiondisablements) {
 		IExtensionRegistry extensionregistry = Platform.getExtensionRegistry();
 		IConfigurationElement[] environmentuserparametercontributors = extensionregistry
 				.getConfigurationElementsFor(Activator.EXTENSION_POINT_ID_ENVIRONMENT_USER_PARAMETER_CONTRIBUTOR);
-		environmentParameterContributors = new ArrayList<>();
+		List<ContributedExtensionConfiguration<IEnvironmentUserParameterContributor>> result = new ArrayList<>();
 		for (IConfigurationElement configelem : environmentuserparametercontributors) {
 			try {
 				IExtension extension = configelem.getDeclaringExtension();
@@ -153,17 +216,77 @@ public final class EclipseSakerIDEPlugin implements Closeable, ExceptionDisplaye
 							+ IEnvironmentUserParameterContributor.class.getName() + ". ("
 							+ Activator.EXTENSION_POINT_ID_ENVIRONMENT_USER_PARAMETER_CONTRIBUTOR + ")");
 				}
-				environmentParameterContributors.add(new ContributedExtensionConfiguration<>(
+				result.add(new ContributedExtensionConfiguration<>(
 						(IEnvironmentUserParameterContributor) contributor, configelem, enabled));
 			} catch (Exception e) {
 				displayException(SakerLog.SEVERITY_WARNING, "Failed to initialize saker.build plugin extension.", e);
 			}
 		}
-		environmentParameterContributors = ImmutableUtils.unmodifiableList(environmentParameterContributors);
+		return ImmutableUtils.unmodifiableList(result);
+	}
 
-		//initialization doesn't fail
-		sakerPlugin.initialize(sakerJarPath, plugindirectory);
+	/**
+	 * Starts the plugin environment and daemon in the background if it hasn't been started yet.
+	 * <p>
+	 * The environment is started on first use, e.g. when a saker.build project is opened or built, so workspaces
+	 * without saker.build projects don't pay for it.
+	 * 
+	 * @param reason
+	 *            The cause of the start for tracing purposes.
+	 */
+	public void ensureStarted(String reason) {
+		synchronized (startLock) {
+			if (startRequested || closed) {
+				return;
+			}
+			startRequested = true;
+		}
+		traceActivation(SUBSYSTEM_ENVIRONMENT, reason);
+		new Job("Initializing saker.build plugin") {
+			@Override
+			protected IStatus run(IProgressMonitor monitor) {
+				try {
+					start(monitor);
+				} catch (Exception | LinkageError | StackOverflowError | OutOfMemoryError | AssertionError
+						| ServiceConfigurationError e) {
+					return new Status(IStatus.ERROR, Activator.PLUGIN_ID, "Failed to initialize saker.build plugin", e);
+				}
+				return Status.OK_STATUS;
+			}
+		}.schedule();
+	}
 
+	private boolean isStartRequested() {
+		synchronized (startLock) {
+			return startRequested;
+		}
+	}
+
+	/**
+	 * Logs the activation of a subsystem if startup tracing is enabled.
+	 * 
+	 * @param subsystem
+	 *            The subsystem name. One of the <code>SUBSYSTEM_*</code> constants.
+	 * @param reason
+	 *            The cause of the activation. May be <code>null</code>.
+	 */
+	public void traceActivation(String subsystem, String reason) {
+		if (!TRACE_STARTUP) {
+			return;
+		}
+		long elapsedms = (System.nanoTime() - initializeNanos) / 1_000_000;
+		String message = "saker.build " + subsystem + " activated " + elapsedms + " ms after plugin initialization"
+				+ (reason == null ? "." : " by: " + reason);
+		//log with a stack trace so the caller that caused the activation is visible
+		Activator.getDefault().getLog()
+				.log(new Status(IStatus.INFO, Activator.PLUGIN_ID, message, new Exception("Activation stack trace")));
+	}
+
+	/**
+	 * Gets the directory where the plugin can store its files.
+	 */
+	public Path getPluginDirectory() {
+		return pluginDirectory;
 	}
 
 	public void start(IProgressMonitor progressmonitor) throws Exception {
@@ -211,7 +334,7 @@ public final class EclipseSakerIDEPlugin implements Closeable, ExceptionDisplaye
 	}
 
 	public List<ContributedExtensionConfiguration<IEnvironmentUserParameterContributor>> getEnvironmentParameterContributors() {
-		return environmentParameterContributors;
+		return getEnvironmentParameterContributorsLoaded();
 	}
 
 	@Override
@@ -220,6 +343,7 @@ public final class EclipseSakerIDEPlugin implements Closeable, ExceptionDisplaye
 	}
 
 	public final SakerEnvironmentImpl getPluginEnvironment() throws IOException {
+		ensureStarted("plugin environment request");
 		return sakerPlugin.getPluginEnvironment();
 	}
 
@@ -233,13 +357,18 @@ public final class EclipseSakerIDEPlugin implements Closeable, ExceptionDisplaye
 		boolean propertieschanged;
 		synchronized (configurationChangeLock) {
 			propertieschanged = sakerPlugin.setIDEPluginProperties(properties);
-			Set<ExtensionDisablement> prevdisablements = getExtensionDisablements(
-					this.environmentParameterContributors);
+			//don't load the contributors only to compare the disablements
+			Set<ExtensionDisablement> prevdisablements = this.environmentParameterContributors == null
+					? initialExtensionDisablements
+					: getExtensionDisablements(this.environmentParameterContributors);
 			this.environmentParameterContributors = ImmutableUtils.makeImmutableList(environmentParameterContributors);
 			Set<ExtensionDisablement> currentdisablements = getExtensionDisablements(
 					this.environmentParameterContributors);
 			if (!prevdisablements.equals(currentdisablements)) {
 				propertieschanged = true;
+				for (ScriptDesignerRegistry<?> designers : getScriptDesignerRegistries()) {
+					designers.setExtensionDisablements(currentdisablements);
+				}
 				try {
 					writePluginConfigurationFile(currentdisablements);
 				} catch (IOException e) {
@@ -255,6 +384,10 @@ public final class EclipseSakerIDEPlugin implements Closeable, ExceptionDisplaye
 	}
 
 	private void startUpdateEnvironmentParametersJob() {
+		if (!isStartRequested()) {
+			//the environment will be started with the current properties
+			return;
+		}
 		new Job("Updating environment parameters") {
 			@Override
 			protected IStatus run(IProgressMonitor monitor) {
@@ -271,6 +404,11 @@ public final class EclipseSakerIDEPlugin implements Closeable, ExceptionDisplaye
 	}
 
 	public void reloadPluginEnvironment() {
+		if (!isStartRequested()) {
+			//not yet started, no need to reload
+			ensureStarted("plugin environment reload");
+			return;
+		}
 		new Job("Reloading plugin environment") {
 			@Override
 			protected IStatus run(IProgressMonitor monitor) {
@@ -323,6 +461,8 @@ public final class EclipseSakerIDEPlugin implements Closeable, ExceptionDisplaye
 			if (eclipseproject != null) {
 				return eclipseproject;
 			}
+			ensureStarted("project " + project.getName());
+			traceActivation(SUBSYSTEM_PROJECT, project.getName());
 			SakerIDEProject sakerproject = sakerPlugin.getOrCreateProject(project);
 			eclipseproject = new EclipseSakerIDEProject(this, sakerproject, project);
 			projects.put(project, eclipseproject);
@@ -331,6 +471,17 @@ public final class EclipseSakerIDEPlugin implements Closeable, ExceptionDisplaye
 		}
 	}
 
+	/**
+	 * Gets the project if it has already been loaded.
+	 * 
+	 * @return The project or <code>null</code> if it's not loaded.
+	 */
+	public EclipseSakerIDEProject getLoadedProject(IProject project) {
+		synchronized (projectsLock) {
+			return projects.get(project);
+		}
+	}
+
 	public final Collection<? extends EclipseSakerIDEProject> getLoadedProjects() {
 		return ImmutableUtils.unmodifiableCollection(projects.values());
 	}
@@ -471,9 +622,17 @@ public final class EclipseSakerIDEPlugin implements Closeable, ExceptionDisplaye
 	public synchronized void close() throws IOException {
 		closed = true;
 		IOException exc = null;
-		List<ContributedExtensionConfiguration<IEnvironmentUserParameterContributor>> envparamcontributors = environmentParameterContributors;
-		if (!ObjectUtils.isNullOrEmpty(envparamcontributors)) {
+		IExtensionRegistry extensionregistry = Platform.getExtensionRegistry();
+		for (ScriptDesignerRegistry<?> designers : getScriptDesignerRegistries()) {
+			extensionregistry.removeListener(designers);
+			designers.invalidate();
+		}
+		List<ContributedExtensionConfiguration<IEnvironmentUserParameterContributor>> envparamcontributors;
+		synchronized (configurationChangeLock) {
+			envparamcontributors = environmentParameterContributors;
 			this.environmentParameterContributors = Collections.emptyList();
+		}
+		if (!ObjectUtils.isNullOrEmpty(envparamcontributors)) {
 			for (ContributedExtensionConfiguration<IEnvironmentUserParameterContributor> contributor : envparamcontributors) {
 				try {
 					IEnvironmentUserParameterContributor paramcontributor = contributor.getContributor();
@@ -556,103 +715,20 @@ public final class EclipseSakerIDEPlugin implements Closeable, ExceptionDisplaye
 	}
 
 	public IScriptProposalDesigner getScriptProposalDesignerForSchemaIdentifiers(Set<String> schemaidentifiers) {
-		Objects.requireNonNull(schemaidentifiers, "schema identifiers");
-		IConfigurationElement[] ideconfigextensionconfigelements = Platform.getExtensionRegistry()
-				.getConfigurationElementsFor(Activator.EXTENSION_POINT_ID_SCRIPT_PROPOSAL_DESIGNER);
-		List<IScriptProposalDesigner> designers = new ArrayList<>();
-		for (IConfigurationElement configelem : ideconfigextensionconfigelements) {
-			String configschemaid = configelem.getAttribute("schema_id");
-			if (configschemaid != null && !schemaidentifiers.contains(configschemaid)) {
-				//can't use
-				continue;
-			}
-			try {
-				Object contributor = configelem.createExecutableExtension("class");
-				if (!(contributor instanceof IScriptProposalDesigner)) {
-					throw new ClassCastException("Extension " + getExtensionName(configelem.getDeclaringExtension())
-							+ " doesn't implement " + IScriptInformationDesigner.class.getName() + ". ("
-							+ Activator.EXTENSION_POINT_ID_SCRIPT_PROPOSAL_DESIGNER + ")");
-				}
-				designers.add((IScriptProposalDesigner) contributor);
-			} catch (Exception e) {
-				displayException(SakerLog.SEVERITY_ERROR,
-						"Failed to intialize script proposal designer extension: " + configelem.getName(), e);
-				continue;
-			}
-		}
-		if (designers.isEmpty()) {
-			return null;
-		}
-		if (designers.size() == 1) {
-			return designers.get(0);
-		}
-		return new MultiScriptProposalDesigner(designers);
+		return scriptProposalDesigners.getDesigner(schemaidentifiers);
 	}
 
 	public IScriptInformationDesigner getScriptInformationDesignerForSchemaIdentifier(String schemaid) {
-		IConfigurationElement[] ideconfigextensionconfigelements = Platform.getExtensionRegistry()
-				.getConfigurationElementsFor(Activator.EXTENSION_POINT_ID_SCRIPT_INFORMATION_DESIGNER);
-		List<IScriptInformationDesigner> designers = new ArrayList<>();
-		for (IConfigurationElement configelem : ideconfigextensionconfigelements) {
-			String configschemaid = configelem.getAttribute("schema_id");
-			if (configschemaid != null && !configschemaid.equals(schemaid)) {
-				//can't use
-				continue;
-			}
-			try {
-				Object contributor = configelem.createExecutableExtension("class");
-				if (!(contributor instanceof IScriptInformationDesigner)) {
-					throw new ClassCastException("Extension " + getExtensionName(configelem.getDeclaringExtension())
-							+ " doesn't implement " + IScriptInformationDesigner.class.getName() + ". ("
-							+ Activator.EXTENSION_POINT_ID_SCRIPT_INFORMATION_DESIGNER + ")");
-				}
-				designers.add((IScriptInformationDesigner) contributor);
-			} catch (Exception e) {
-				displayException(SakerLog.SEVERITY_ERROR,
-						"Failed to intialize script information designer extension: " + configelem.getName(), e);
-				continue;
-			}
-		}
-		if (designers.isEmpty()) {
-			return null;
-		}
-		if (designers.size() == 1) {
-			return designers.get(0);
-		}
-		return new MultiScriptInformationDesigner(designers);
+		return scriptInformationDesigners.getDesigner(Collections.singleton(schemaid));
 	}
 
 	public IScriptOutlineDesigner getScriptOutlineDesignerForSchemaIdentifier(String schemaid) {
-		IConfigurationElement[] ideconfigextensionconfigelements = Platform.getExtensionRegistry()
-				.getConfigurationElementsFor(Activator.EXTENSION_POINT_ID_SCRIPT_OUTLINE_DESIGNER);
-		List<IScriptOutlineDesigner> designers = new ArrayList<>();
-		for (IConfigurationElement configelem : ideconfigextensionconfigelements) {
-			String configschemaid = configelem.getAttribute("schema_id");
-			if (configschemaid != null && !configschemaid.equals(schemaid)) {
-				//can't use
-				continue;
-			}
-			try {
-				Object contributor = configelem.createExecutableExtension("class");
-				if (!(contributor instanceof IScriptOutlineDesigner)) {
-					throw new ClassCastException("Extension " + getExtensionName(configelem.getDeclaringExtension())
-							+ " doesn't implement " + IScriptOutlineDesigner.class.getName() + ". ("
-							+ Activator.EXTENSION_POINT_ID_SCRIPT_OUTLINE_DESIGNER + ")");
-				}
-				designers.add((IScriptOutlineDesigner) contributor);
-			} catch (Exception e) {
-				displayException(SakerLog.SEVERITY_ERROR,
-						"Failed to intialize script outline designer extension: " + configelem.getName(), e);
-				continue;
-			}
-		}
-		if (designers.isEmpty()) {
-			return null;
-		}
-		if (designers.size() == 1) {
-			return designers.get(0);
-		}
-		return new MultiScriptOutlineDesigner(designers);
+		return scriptOutlineDesigners.getDesigner(Collections.singleton(schemaid));
+	}
+
+	private List<ScriptDesignerRegistry<?>> getScriptDesignerRegistries() {
+		return ImmutableUtils.<ScriptDesignerRegistry<?>> asUnmodifiableArrayList(scriptProposalDesigners,
+				scriptInformationDesigners, scriptOutlineDesigners);
 	}
 
 	public static String getExtensionName(IExtension extension) {
@@ -746,7 +822,8 @@ public final class EclipseSakerIDEPlugin implements Closeable, ExceptionDisplaye
 
 	private IDEPluginProperties getIDEPluginPropertiesWithEnvironmentParameterContributions(
 			IDEPluginProperties properties, IProgressMonitor monitor) {
-		if (environmentParameterContributors.isEmpty()) {
+		List<ContributedExtensionConfiguration<IEnvironmentUserParameterContributor>> contributors = getEnvironmentParameterContributorsLoaded();
+		if (contributors.isEmpty()) {
 			return properties;
 		}
 		if (monitor == null) {
@@ -754,7 +831,6 @@ public final class EclipseSakerIDEPlugin implements Closeable, ExceptionDisplaye
 		}
 		SimpleIDEPluginProperties.Builder builder = SimpleIDEPluginProperties.builder(properties);
 		Map<String, String> propertiesuserparams = SakerIDEPlugin.entrySetToMap(properties.getUserParameters());
-		List<ContributedExtensionConfiguration<IEnvironmentUserParameterContributor>> contributors = environmentParameterContributors;
 
 		NavigableMap<String, String> userparammap = getUserParametersWithContributors(propertiesuserparams,
 				contributors, monitor);
@@ -790,6 +866,7 @@ public final class EclipseSakerIDEPlugin implements Closeable, ExceptionDisplaye
 				IConsoleManager conMan = plugin.getConsoleManager();
 
 				// no console found, so create a new one
+				traceActivation(SUBSYSTEM_CONSOLE, null);
 				SakerPluginInfoConsole console = new SakerPluginInfoConsole(this, "Saker.build plugin info", type);
 				conMan.addConsoles(new IConsole[] { console });
 
@@ -15,19 +15,26 @@
  */
 package saker.build.ide.eclipse;
 
+import java.io.Flushable;
 import java.io.IOException;
 import java.io.InputStream;
 import java.io.OutputStream;
 import java.io.PrintStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.FileVisitResult;
 import java.nio.file.Files;
 import java.nio.file.InvalidPathException;
 import java.nio.file.NoSuchFileException;
 import java.nio.file.Path;
+import java.nio.file.SimpleFileVisitor;
 import java.nio.file.StandardCopyOption;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.ArrayDeque;
 import java.util.ArrayList;
 import java.util.Collection;
 import java.util.Collections;
 import java.util.Date;
+import java.util.HashMap;
 import java.util.HashSet;
 import java.util.Iterator;
 import java.util.LinkedHashSet;
@@ -43,8 +50,11 @@ import java.util.TreeMap;
 import java.util.TreeSet;
 import java.util.UUID;
 import java.util.WeakHashMap;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
 import java.util.concurrent.locks.Lock;
 import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.Consumer;
 
 import org.eclipse.core.resources.IFile;
 import org.eclipse.core.resources.IFolder;
@@ -56,10 +66,15 @@ import org.eclipse.core.runtime.IExtension;
 import org.eclipse.core.runtime.IExtensionRegistry;
 import org.eclipse.core.runtime.IPath;
 import org.eclipse.core.runtime.IProgressMonitor;
+import org.eclipse.core.runtime.IStatus;
 import org.eclipse.core.runtime.NullProgressMonitor;
 import org.eclipse.core.runtime.OperationCanceledException;
 import org.eclipse.core.runtime.Platform;
 import org.eclipse.core.runtime.QualifiedName;
+import org.eclipse.core.runtime.Status;
+import org.eclipse.core.runtime.jobs.IJobChangeEvent;
+import org.eclipse.core.runtime.jobs.Job;
+import org.eclipse.core.runtime.jobs.JobChangeAdapter;
 import org.eclipse.jface.dialogs.Dialog;
 import org.eclipse.jface.dialogs.IDialogConstants;
 import org.eclipse.jface.dialogs.IconAndMessageDialog;
@@ -134,7 +149,9 @@ import saker.build.ide.support.properties.IDEProjectProperties;
 import saker.build.ide.support.properties.ParameterizedBuildTargetIDEProperty;
 import saker.build.ide.support.properties.PropertiesValidationErrorResult;
 import saker.build.ide.support.properties.PropertiesValidationException;
+import saker.build.ide.support.properties.ScriptConfigurationIDEProperty;
 import saker.build.ide.support.properties.SimpleIDEProjectProperties;
+import saker.build.meta.Versions;
 import saker.build.runtime.environment.BuildTaskExecutionResult;
 import saker.build.runtime.environment.BuildTaskExecutionResult.ResultKind;
 import saker.build.runtime.environment.BuildTaskExecutionResultImpl;
@@ -192,11 +209,85 @@ public final class EclipseSakerIDEProject implements ExceptionDisplayer, ISakerP
 
 	private static final String CONSOLE_NAME = "Saker.build Console";
 
+	/**
+	 * Whether builds of different targets in the same project may run concurrently. Can be turned on by setting the
+	 * <code>saker.build.ide.eclipse.build.parallel</code> system property to <code>true</code>.
+	 * <p>
+	 * Builds are still serialized if their build directories overlap. The output lines of the builds are prefixed in
+	 * the console, so the concurrently running builds can be told apart.
+	 */
+	private static final boolean PARALLEL_BUILDS = Boolean.getBoolean(Activator.PLUGIN_ID + ".build.parallel");
+	private static final long BUILD_DIRECTORY_WAIT_MILLIS = 500;
+	/**
+	 * Whether a running build should be cancelled if a new request for the same build target is made. Can be turned
+	 * on by setting the <code>saker.build.ide.eclipse.build.cancel.superseded</code> system property to
+	 * <code>true</code>.
+	 */
+	private static final boolean CANCEL_SUPERSEDED_BUILDS = Boolean
+			.getBoolean(Activator.PLUGIN_ID + ".build.cancel.superseded");
+	/**
+	 * Whether only the modified resources of the build directory should be refreshed after a build. Can be turned off
+	 * by setting the <code>saker.build.ide.eclipse.build.full.refresh</code> system property to <code>true</code>.
+	 */
+	private static final boolean SCOPED_BUILD_DIRECTORY_REFRESH = !Boolean
+			.getBoolean(Activator.PLUGIN_ID + ".build.full.refresh");
+	/**
+	 * Whether the build output should be written to the console through a {@link BufferedBuildOutput}. Can be turned
+	 * off by setting the <code>saker.build.ide.eclipse.build.console.unbuffered</code> system property to
+	 * <code>true</code>.
+	 */
+	private static final boolean BUFFERED_CONSOLE_OUTPUT = !Boolean
+			.getBoolean(Activator.PLUGIN_ID + ".build.console.unbuffered");
+	/**
+	 * The number of modified resources above which the build directory is fully refreshed instead.
+	 */
+	private static final int SCOPED_REFRESH_RESOURCE_LIMIT = 4096;
+	/**
+	 * Tolerance for the modification time comparison, as file systems may store them with lower precision.
+	 */
+	private static final long MODIFICATION_TIME_TOLERANCE_MILLIS = 2000;
+
 	private final EclipseSakerIDEPlugin eclipseSakerPlugin;
 	private final SakerIDEProject sakerProject;
 	private final IProject ideProject;
 	private final Lock executionLock = new ReentrantLock();
 	private final Object configurationChangeLock = new Object();
+	private final Object ideConfigurationLock = new Object();
+	private final Object buildHistoryLock = new Object();
+	private BuildHistory buildHistory;
+	private final Object scriptTargetInfoCacheLock = new Object();
+	private ScriptTargetInfoCache scriptTargetInfoCache;
+	private final ScriptTargetsLoader scriptTargetsLoader;
+	private final AtomicBoolean scriptModellingActivated = new AtomicBoolean();
+
+	/**
+	 * The number of builds that were started in parallel build mode, including the ones waiting for their build
+	 * directory.
+	 */
+	private final AtomicInteger parallelBuildCount = new AtomicInteger();
+	/**
+	 * The absolute build directory execution paths of the executing builds in parallel build mode. Builds without a
+	 * build directory are present with a <code>null</code> element.
+	 */
+	private final List<SakerPath> executingBuildDirectories = new ArrayList<>();
+	/**
+	 * The number of executing builds in parallel build mode. Guarded by {@link #executingBuildDirectories}.
+	 */
+	private int executingBuildCount;
+
+	private final Object buildQueueLock = new Object();
+	/**
+	 * The requested builds in the order they are started.
+	 */
+	private final ArrayDeque<BuildRequestKey> buildQueue = new ArrayDeque<>();
+	/**
+	 * The build jobs in the {@linkplain #buildQueue queue} that are not yet scheduled.
+	 */
+	private final Map<BuildRequestKey, Job> queuedBuildJobs = new HashMap<>();
+	/**
+	 * The build jobs that are scheduled or executing.
+	 */
+	private final Map<BuildRequestKey, Job> runningBuildJobs = new HashMap<>();
 
 	private final Set<ProjectPropertiesChangeListener> propertiesChangeListeners = Collections
 			.newSetFromMap(new WeakHashMap<>());
@@ -214,6 +305,7 @@ public final class EclipseSakerIDEProject implements ExceptionDisplayer, ISakerP
 		this.eclipseSakerPlugin = eclipseSakerIDEPlugin;
 		this.sakerProject = sakerproject;
 		this.ideProject = project;
+		this.scriptTargetsLoader = new ScriptTargetsLoader(this);
 	}
 
 	public void initialize() {
@@ -266,10 +358,25 @@ public final class EclipseSakerIDEProject implements ExceptionDisplayer, ISakerP
 		executionParameterContributors = ImmutableUtils.unmodifiableList(executionParameterContributors);
 
 		sakerProject.initialize(projectpath);
+
+		//parse the scripts in the background so the targets menu doesn't need to
+		scriptTargetsLoader.loadAll(getTrackedScriptPaths());
 	}
 
 	protected void close() throws IOException {
+		scriptTargetsLoader.close();
 		IOException exc = null;
+		ScriptTargetInfoCache targetcache;
+		synchronized (scriptTargetInfoCacheLock) {
+			targetcache = scriptTargetInfoCache;
+		}
+		if (targetcache != null) {
+			try {
+				targetcache.flush();
+			} catch (IOException e) {
+				exc = IOUtils.addExc(exc, e);
+			}
+		}
 		List<ContributedExtensionConfiguration<IExecutionUserParameterContributor>> envparamcontributors = executionParameterContributors;
 		if (!ObjectUtils.isNullOrEmpty(envparamcontributors)) {
 			this.executionParameterContributors = Collections.emptyList();
@@ -637,6 +744,7 @@ public final class EclipseSakerIDEProject implements ExceptionDisplayer, ISakerP
 				if (propertieschanged) {
 					sakerProject.updateForProjectProperties(
 							getIDEProjectPropertiesWithExecutionParameterContributions(properties, null));
+					reloadScriptTargets();
 				}
 			} finally {
 				projectPropertiesChanged();
@@ -652,6 +760,7 @@ public final class EclipseSakerIDEProject implements ExceptionDisplayer, ISakerP
 				if (propertieschanged) {
 					sakerProject.updateForProjectProperties(
 							getIDEProjectPropertiesWithExecutionParameterContributions(properties, null));
+					reloadScriptTargets();
 				}
 			} finally {
 				projectPropertiesChanged();
@@ -672,6 +781,7 @@ public final class EclipseSakerIDEProject implements ExceptionDisplayer, ISakerP
 	}
 
 	public final ScriptModellingEnvironment getScriptingEnvironment() throws IOException {
+		traceScriptModellingActivation();
 		return sakerProject.getScriptingEnvironment();
 	}
 
@@ -686,9 +796,141 @@ public final class EclipseSakerIDEProject implements ExceptionDisplayer, ISakerP
 
 	public final Collection<? extends BuildTargetInformation> getScriptBuildTargetInfos(SakerPath scriptpath)
 			throws ScriptParsingFailedException, IOException {
+		ScriptTargetInfoCache cache = getScriptTargetInfoCache();
+		Path localpath = getScriptLocalPath(scriptpath);
+		if (cache == null || localpath == null) {
+			return parseScriptBuildTargetInfos(scriptpath);
+		}
+		ScriptTargetInfoCache.Lookup lookup;
+		try {
+			lookup = cache.lookup(scriptpath, localpath, getScriptConfigurationCacheKey());
+		} catch (IOException e) {
+			//failed to read the script file, let the scripting environment handle it
+			return parseScriptBuildTargetInfos(scriptpath);
+		}
+		Collection<? extends BuildTargetInformation> cached = lookup.getTargets();
+		if (cached != null) {
+			return cached;
+		}
+		Collection<? extends BuildTargetInformation> result = parseScriptBuildTargetInfos(scriptpath);
+		if (result == null) {
+			return null;
+		}
+		//the cache file is written when the background loading finishes, or the project is closed
+		return cache.put(lookup, result);
+	}
+
+	private Collection<? extends BuildTargetInformation> parseScriptBuildTargetInfos(SakerPath scriptpath)
+			throws ScriptParsingFailedException, IOException {
+		traceScriptModellingActivation();
 		return sakerProject.getScriptBuildTargetInfos(scriptpath);
 	}
 
+	private void traceScriptModellingActivation() {
+		if (scriptModellingActivated.compareAndSet(false, true)) {
+			eclipseSakerPlugin.traceActivation(EclipseSakerIDEPlugin.SUBSYSTEM_SCRIPT_MODELLING, ideProject.getName());
+		}
+	}
+
+	/**
+	 * Gets the build targets of the script if they have been loaded in the background.
+	 * <p>
+	 * This method doesn't parse the script on the caller thread, but schedules it to be loaded if necessary.
+	 * 
+	 * @return The result or <code>null</code> if the script is being loaded.
+	 * @see #getScriptBuildTargetInfos(SakerPath)
+	 */
+	public ScriptTargetsLoader.Result getLoadedScriptBuildTargetInfos(SakerPath scriptpath) {
+		return scriptTargetsLoader.getResult(scriptpath);
+	}
+
+	private void reloadScriptTargets() {
+		scriptTargetsLoader.invalidate();
+		scriptTargetsLoader.loadAll(getTrackedScriptPaths());
+	}
+
+	/**
+	 * Gets the on-disk cache of the script build targets.
+	 * 
+	 * @return The cache or <code>null</code> if the project doesn't have a working location.
+	 */
+	public ScriptTargetInfoCache getScriptTargetInfoCache() {
+		synchronized (scriptTargetInfoCacheLock) {
+			if (scriptTargetInfoCache == null) {
+				IPath location = ideProject.getWorkingLocation(Activator.PLUGIN_ID);
+				if (location == null) {
+					return null;
+				}
+				scriptTargetInfoCache = new ScriptTargetInfoCache(location.toFile().toPath());
+			}
+			return scriptTargetInfoCache;
+		}
+	}
+
+	/**
+	 * Gets the key that identifies the current scripting configuration of the project.
+	 * <p>
+	 * The key changes if the script configurations or modelling exclusions are modified, or the saker.build version
+	 * changes, so the cached script informations are not used in that case.
+	 */
+	public String getScriptConfigurationCacheKey() {
+		StringBuilder sb = new StringBuilder(Versions.VERSION_STRING_FULL);
+		IDEProjectProperties properties = getIDEProjectProperties();
+		if (properties != null) {
+			Set<? extends ScriptConfigurationIDEProperty> scriptconfigs = properties.getScriptConfigurations();
+			if (scriptconfigs != null) {
+				for (ScriptConfigurationIDEProperty scriptconfig : scriptconfigs) {
+					sb.append('\n');
+					sb.append(scriptconfig.getScriptsWildcard());
+					sb.append('\t');
+					if (scriptconfig.getClassPathLocation() != null) {
+						sb.append(SakerIDESupportUtils.classPathLocationToLabel(scriptconfig.getClassPathLocation()));
+					}
+					sb.append('\t');
+					if (scriptconfig.getServiceEnumerator() != null) {
+						sb.append(SakerIDESupportUtils.serviceEnumeratorToLabel(scriptconfig.getServiceEnumerator()));
+					}
+					Set<? extends Entry<String, String>> options = scriptconfig.getScriptOptions();
+					if (options != null) {
+						TreeMap<String, String> sortedoptions = new TreeMap<>();
+						for (Entry<String, String> option : options) {
+							sortedoptions.put(option.getKey(), option.getValue());
+						}
+						for (Entry<String, String> option : sortedoptions.entrySet()) {
+							sb.append('\t');
+							sb.append(option.getKey());
+							sb.append('=');
+							sb.append(option.getValue());
+						}
+					}
+				}
+			}
+			Set<String> exclusions = properties.getScriptModellingExclusions();
+			if (exclusions != null) {
+				sb.append('\n');
+				sb.append(new TreeSet<>(exclusions));
+			}
+		}
+		//hash the key so it is not arbitrarily long
+		return UUID.nameUUIDFromBytes(sb.toString().getBytes(StandardCharsets.UTF_8)).toString();
+	}
+
+	Path getScriptLocalPath(SakerPath scriptpath) {
+		SakerPath relativepath = executionPathToProjectRelativePath(scriptpath);
+		if (relativepath == null) {
+			return null;
+		}
+		Path projectpath = getProjectPath();
+		if (projectpath == null) {
+			return null;
+		}
+		try {
+			return projectpath.resolve(relativepath.toString());
+		} catch (InvalidPathException e) {
+			return null;
+		}
+	}
+
 	public SakerPath getProjectDirectoryExecutionPath() {
 		return projectPathToExecutionPath(SakerPath.EMPTY);
 	}
@@ -702,6 +944,10 @@ public final class EclipseSakerIDEProject implements ExceptionDisplayer, ISakerP
 		}
 		try {
 			ideProject.deleteMarkers(ProjectBuilder.MARKER_TYPE, true, IProject.DEPTH_INFINITE);
+			SakerProjectBuildConsole console = ProjectBuilder.findExistingConsole(ideProject);
+			if (console != null) {
+				console.getMarkerBatcher().reset();
+			}
 		} catch (Exception e) {
 			displayException(SakerLog.SEVERITY_ERROR, "Failed to delete markets on project: " + ideProject.getName(),
 					e);
@@ -738,6 +984,118 @@ public final class EclipseSakerIDEProject implements ExceptionDisplayer, ISakerP
 		});
 	}
 
+	/**
+	 * Schedules a build job for the given build target.
+	 * <p>
+	 * If a build job for the same build target is already queued, the request is ignored. If a build for the same
+	 * target is already running, it is cancelled if configured by the
+	 * <code>saker.build.ide.eclipse.build.cancel.superseded</code> system property.
+	 * <p>
+	 * The queued builds are started in the order they were requested. Unless parallel builds are enabled, the next job
+	 * is only scheduled when the running one finishes.
+	 * 
+	 * @param scriptpath
+	 *            The absolute execution path of the build script.
+	 * @param targetname
+	 *            The target name to run.
+	 * @param parameterizedtargetuuid
+	 *            The unique identifier of the parameterized target. May be <code>null</code>.
+	 * @param jobname
+	 *            The name of the build job.
+	 * @param buildrunner
+	 *            The build to run.
+	 */
+	public void scheduleBuildJob(SakerPath scriptpath, String targetname, String parameterizedtargetuuid,
+			String jobname, Consumer<? super IProgressMonitor> buildrunner) {
+		BuildRequestKey request = new BuildRequestKey(scriptpath, targetname, parameterizedtargetuuid);
+		String queuemessage;
+		Job startjob;
+		synchronized (buildQueueLock) {
+			if (queuedBuildJobs.containsKey(request)) {
+				queuemessage = "Build request already queued: " + jobname + " " + getBuildQueueStateLocked();
+				startjob = null;
+			} else {
+				Job running = runningBuildJobs.get(request);
+				if (running != null && CANCEL_SUPERSEDED_BUILDS) {
+					running.cancel();
+				}
+				Job job = new Job(jobname) {
+					@Override
+					protected IStatus run(IProgressMonitor monitor) {
+						if (monitor.isCanceled()) {
+							return Status.CANCEL_STATUS;
+						}
+						buildrunner.accept(monitor);
+						return Status.OK_STATUS;
+					}
+				};
+				job.setPriority(Job.BUILD);
+				job.addJobChangeListener(new JobChangeAdapter() {
+					@Override
+					public void done(IJobChangeEvent event) {
+						//called even if the job is cancelled before it starts running
+						buildJobDone(request, event.getJob());
+					}
+				});
+				queuedBuildJobs.put(request, job);
+				buildQueue.addLast(request);
+				if (running != null && CANCEL_SUPERSEDED_BUILDS) {
+					queuemessage = "Cancelling superseded build: " + jobname + " " + getBuildQueueStateLocked();
+				} else if (queuedBuildJobs.size() + runningBuildJobs.size() > 1) {
+					queuemessage = "Build queued: " + jobname + " " + getBuildQueueStateLocked();
+				} else {
+					queuemessage = null;
+				}
+				startjob = pollStartableBuildJobLocked();
+			}
+		}
+		if (queuemessage != null) {
+			try {
+				ProjectBuilder.findBuildConsole(this).printBuildQueueMessage(queuemessage);
+			} catch (Exception e) {
+				displayException(SakerLog.SEVERITY_WARNING,
+						"Failed to print build queue state for project: " + ideProject.getName(), e);
+			}
+		}
+		if (startjob != null) {
+			startjob.schedule();
+		}
+	}
+
+	private String getBuildQueueStateLocked() {
+		return "(" + queuedBuildJobs.size() + " queued, " + runningBuildJobs.size() + " running)";
+	}
+
+	/**
+	 * Removes the next build job from the queue if it can be started.
+	 * 
+	 * @return The job to schedule, or <code>null</code> if none.
+	 */
+	private Job pollStartableBuildJobLocked() {
+		if (!PARALLEL_BUILDS && !runningBuildJobs.isEmpty()) {
+			//started when the running build finishes
+			return null;
+		}
+		BuildRequestKey request = buildQueue.pollFirst();
+		if (request == null) {
+			return null;
+		}
+		Job job = queuedBuildJobs.remove(request);
+		runningBuildJobs.put(request, job);
+		return job;
+	}
+
+	private void buildJobDone(BuildRequestKey request, Job job) {
+		Job next;
+		synchronized (buildQueueLock) {
+			runningBuildJobs.remove(request, job);
+			next = pollStartableBuildJobLocked();
+		}
+		if (next != null) {
+			next.schedule();
+		}
+	}
+
 	public boolean isLatestBuildScriptTargetEquals(SakerPath scriptpath, String target, String parameterizeduuid) {
 		try {
 			String lastparameduuid = ideProject
@@ -928,6 +1286,41 @@ public final class EclipseSakerIDEProject implements ExceptionDisplayer, ISakerP
 		}
 	}
 
+	private static final class BuildRequestKey {
+		private final SakerPath scriptPath;
+		private final String targetName;
+		private final String parameterizedTargetUuid;
+
+		public BuildRequestKey(SakerPath scriptPath, String targetName, String parameterizedTargetUuid) {
+			this.scriptPath = scriptPath;
+			this.targetName = targetName;
+			this.parameterizedTargetUuid = parameterizedTargetUuid;
+		}
+
+		@Override
+		public int hashCode() {
+			final int prime = 31;
+			int result = 1;
+			result = prime * result + ((parameterizedTargetUuid == null) ? 0 : parameterizedTargetUuid.hashCode());
+			result = prime * result + ((scriptPath == null) ? 0 : scriptPath.hashCode());
+			result = prime * result + ((targetName == null) ? 0 : targetName.hashCode());
+			return result;
+		}
+
+		@Override
+		public boolean equals(Object obj) {
+			if (this == obj)
+				return true;
+			if (obj == null)
+				return false;
+			if (getClass() != obj.getClass())
+				return false;
+			BuildRequestKey other = (BuildRequestKey) obj;
+			return Objects.equals(parameterizedTargetUuid, other.parameterizedTargetUuid)
+					&& Objects.equals(scriptPath, other.scriptPath) && Objects.equals(targetName, other.targetName);
+		}
+	}
+
 	private static class ProgressMonitorWrapper implements ExecutionProgressMonitor, TaskProgressMonitor {
 		protected IProgressMonitor progressMonitor;
 		protected volatile boolean cancelled;
@@ -995,34 +1388,83 @@ public final class EclipseSakerIDEProject implements ExceptionDisplayer, ISakerP
 		ProjectBuildConsoleInterfaceAccessor consoleaccessor = new ProjectBuildConsoleInterfaceAccessor(monitorwrapper);
 
 		SakerProjectBuildConsole console = ProjectBuilder.findBuildConsole(this);
+		long buildstartmillis = System.currentTimeMillis();
+		BuildPhaseTimings timings = new BuildPhaseTimings();
+		BuildMarkerBatcher markerbatcher = console.getMarkerBatcher();
+		BuildRequestKey markertarget = new BuildRequestKey(scriptfile, targetname, parameterizedtargetuuid);
+		boolean markersstarted = false;
 		console.startBuild(consoleaccessor);
 		try {
 			//streams are closed in finally without throwing
-			IOConsoleOutputStream out = console.newOutputStream();
-			IOConsoleOutputStream err = console.newOutputStream();
+			IOConsoleOutputStream consoleout = console.newOutputStream();
+			IOConsoleOutputStream consoleerr = console.newOutputStream();
+			OutputStream out = consoleout;
+			OutputStream err = consoleerr;
+			if (PARALLEL_BUILDS) {
+				//the output of the concurrent builds is interleaved in the console
+				//prefix the lines so they can be told apart
+				String sectionprefix = console.createOutputSectionPrefix(markertarget);
+				out = new LinePrefixOutputStream(consoleout, sectionprefix);
+				err = new LinePrefixOutputStream(consoleerr, sectionprefix);
+			}
+			OutputStream buildout = out;
+			OutputStream builderr = err;
+			BufferedBuildOutput bufferedoutput = null;
+			if (BUFFERED_CONSOLE_OUTPUT) {
+				bufferedoutput = new BufferedBuildOutput();
+				buildout = bufferedoutput.createOutputStream(out);
+				builderr = bufferedoutput.createOutputStream(err);
+			}
+			if (!SakerProjectBuildConsole.CONSOLE_MARKERS) {
+				//create the markers from the diagnostics in the build output on the writing thread
+				//the diagnostics are attributed to the target of this build, as others may run concurrently
+				BuildDiagnostic.Listener diagnosticlistener = d -> console.reportDiagnostic(markertarget, d);
+				buildout = new BuildDiagnosticOutputStream(buildout, diagnosticlistener);
+				builderr = new BuildDiagnosticOutputStream(builderr, diagnosticlistener);
+			}
 
 			BuildTaskExecutionResult result = null;
 			SakerPath executionworkingdir = null;
 			Display display = PlatformUI.getWorkbench().getDisplay();
 			boolean locked = false;
+			boolean parallelcounted = false;
+			boolean executingparallel = false;
+			SakerPath parallelbuilddir = null;
 			try {
-				executionLock.lockInterruptibly();
-				locked = true;
-				console.clearConsole();
+				SakerPath relativescriptpath = executionPathToProjectRelativePath(scriptfile);
+				String jobname = displaytargetname + "@" + relativescriptpath;
+				if (PARALLEL_BUILDS) {
+					parallelcounted = true;
+					if (parallelBuildCount.incrementAndGet() == 1) {
+						//only clear if there are no other builds using the console
+						console.clearConsole();
+					}
+					//the header of the output section of this build
+					out.write(("Build requested. (" + jobname + ")\n").getBytes());
+				} else {
+					timings.start(BuildPhaseTimings.PHASE_LOCK_WAIT);
+					executionLock.lockInterruptibly();
+					timings.end();
+					locked = true;
+					console.clearConsole();
+					console.setOutputTarget(markertarget);
+				}
 				if (monitorwrapper.isCancelled()) {
-					out.write("Build cancelled.\n");
+					out.write("Build cancelled.\n".getBytes());
 					return;
 				}
 				ExecutionParametersImpl params;
 				IDEProjectProperties projectproperties;
 				try {
+					timings.start(BuildPhaseTimings.PHASE_PROPERTY_CONTRIBUTION);
 					projectproperties = getIDEProjectPropertiesWithExecutionParameterContributions(
 							getIDEProjectProperties(), monitor);
 				} catch (OperationCanceledException e) {
-					out.write("Build cancelled.\n");
+					out.write("Build cancelled.\n".getBytes());
 					return;
 				}
 				try {
+					timings.start(BuildPhaseTimings.PHASE_EXECUTION_PARAMETERS);
 					params = sakerProject.createExecutionParameters(projectproperties);
 					//there were no validation errors
 				} catch (PropertiesValidationException e) {
@@ -1040,7 +1482,9 @@ public final class EclipseSakerIDEProject implements ExceptionDisplayer, ISakerP
 					});
 					return;
 				}
+				timings.start(BuildPhaseTimings.PHASE_DAEMON_ENVIRONMENT);
 				DaemonEnvironment daemonenv = sakerProject.getExecutionDaemonEnvironment(projectproperties);
+				timings.end();
 				if (daemonenv == null) {
 					throw new IllegalStateException("Build daemon environment is not running.");
 				}
@@ -1049,28 +1493,42 @@ public final class EclipseSakerIDEProject implements ExceptionDisplayer, ISakerP
 				params.setRequiresIDEConfiguration(SakerIDESupportUtils
 						.getBooleanValueOrDefault(projectproperties.getRequireTaskIDEConfiguration(), true));
 
+				if (PARALLEL_BUILDS) {
+					parallelbuilddir = getAbsoluteBuildDirectory(params.getBuildDirectory(), pathconfiguration);
+					timings.start(BuildPhaseTimings.PHASE_LOCK_WAIT);
+					int executingcount = startParallelBuildExecution(parallelbuilddir, monitorwrapper);
+					timings.end();
+					if (executingcount < 0) {
+						out.write("Build cancelled.\n".getBytes());
+						return;
+					}
+					executingparallel = true;
+				}
+
 				try {
 					setLastBuildTarget(scriptfile, targetname, parameterizedtargetuuid);
 				} catch (CoreException e) {
 					displayException(SakerLog.SEVERITY_ERROR,
 							"Failed to save last build information properties for project: " + ideProject.getName(), e);
 				}
-				try {
-					ideProject.deleteMarkers(ProjectBuilder.MARKER_TYPE, true, IProject.DEPTH_INFINITE);
-				} catch (CoreException e) {
-					displayException(SakerLog.SEVERITY_ERROR,
-							"Failed to delete markets on project: " + ideProject.getName(), e);
+				markersstarted = true;
+				if (!markerbatcher.startBuild(markertarget)) {
+					//the markers of the project are not tracked yet, they may have been created in a previous session
+					try {
+						ideProject.deleteMarkers(ProjectBuilder.MARKER_TYPE, true, IProject.DEPTH_INFINITE);
+					} catch (CoreException e) {
+						displayException(SakerLog.SEVERITY_ERROR,
+								"Failed to delete markets on project: " + ideProject.getName(), e);
+					}
+					markerbatcher.reset();
 				}
 
-				SakerPath relativescriptpath = executionPathToProjectRelativePath(scriptfile);
-				String jobname = displaytargetname + "@" + relativescriptpath;
-
 				display.syncExec(new Runnable() {
 					@Override
 					public void run() {
 						// \t inserted because @ is handled specially
 						console.setName(CONSOLE_NAME + " (" + ideProject.getName() + "): " + jobname + "\t");
-						err.setColor(display.getSystemColor(SWT.COLOR_RED));
+						consoleerr.setColor(display.getSystemColor(SWT.COLOR_RED));
 					}
 				});
 				IOConsoleInputStream consolein = console.getInputStream();
@@ -1086,19 +1544,27 @@ public final class EclipseSakerIDEProject implements ExceptionDisplayer, ISakerP
 				} catch (IOException e) {
 				}
 				params.setProgressMonitor(monitorwrapper);
-				params.setStandardOutput(ByteSink.valueOf(out));
-				params.setErrorOutput(ByteSink.valueOf(err));
-				params.setStandardInput(ByteSource.valueOf(consolein));
-				params.setUserPrompHandler(new DialogBuildUserPromptHandler(display));
-				params.setSecretInputReader(new DialogSecretInputReader(display));
+				params.setStandardOutput(ByteSink.valueOf(buildout));
+				params.setErrorOutput(ByteSink.valueOf(builderr));
+				if (bufferedoutput != null) {
+					//show the buffered output when the build reads the input
+					params.setStandardInput(ByteSource.valueOf(bufferedoutput.createFlushingInputStream(consolein)));
+				} else {
+					params.setStandardInput(ByteSource.valueOf(consolein));
+				}
+				params.setUserPrompHandler(new DialogBuildUserPromptHandler(display, bufferedoutput));
+				params.setSecretInputReader(new DialogSecretInputReader(display, bufferedoutput));
 				try {
 					out.write(("Build started. (" + jobname + ")\n").getBytes());
 				} catch (IOException e) {
 					//shouldnt happen, we don't display this exception to the user
 					e.printStackTrace();
 				}
+				long executionstartmillis = System.currentTimeMillis();
 				long starttime = System.nanoTime();
+				timings.start(BuildPhaseTimings.PHASE_BUILD);
 				result = sakerProject.build(scriptfile, targetname, daemonenv, params, buildtargetparameters);
+				timings.end();
 				long finishtime = System.nanoTime();
 
 				//so we cannot be interrupted any more
@@ -1107,6 +1573,8 @@ public final class EclipseSakerIDEProject implements ExceptionDisplayer, ISakerP
 				wasinterrupted = Thread.interrupted();
 
 				try {
+					//write the buffered build output before the finishing messages
+					buildout.flush();
 					if (result.getResultKind() == ResultKind.INITIALIZATION_ERROR) {
 						out.write("Failed to initialize execution.\n".getBytes());
 					} else {
@@ -1129,7 +1597,26 @@ public final class EclipseSakerIDEProject implements ExceptionDisplayer, ISakerP
 							IFolder buildfolder = ideProject
 									.getFolder(projectpath.relativize(builddirlocalpath).toString());
 							if (buildfolder != null) {
-								buildfolder.refreshLocal(IFolder.DEPTH_INFINITE, monitor);
+								timings.start(BuildPhaseTimings.PHASE_BUILD_DIRECTORY_REFRESH);
+								long refreshstart = System.nanoTime();
+								int refreshcount = -1;
+								if (SCOPED_BUILD_DIRECTORY_REFRESH && buildfolder.exists()) {
+									refreshcount = refreshModifiedResources(buildfolder, builddirlocalpath,
+											executionstartmillis - MODIFICATION_TIME_TOLERANCE_MILLIS, monitor);
+								}
+								if (refreshcount < 0) {
+									buildfolder.refreshLocal(IFolder.DEPTH_INFINITE, monitor);
+								}
+								try {
+									out.write(("Build directory refreshed. ("
+											+ (refreshcount < 0 ? "full" : refreshcount + " modified") + ", "
+											+ DateUtils.durationToString(
+													(System.nanoTime() - refreshstart) / 1_000_000)
+											+ ")\n").getBytes());
+								} catch (IOException e) {
+									//shouldnt happen, we don't display this exception to the user
+									e.printStackTrace();
+								}
 								if (buildfolder.exists()) {
 									buildfolder.setDerived(true, monitor);
 								}
@@ -1140,11 +1627,13 @@ public final class EclipseSakerIDEProject implements ExceptionDisplayer, ISakerP
 						displayException(SakerLog.SEVERITY_WARNING, "Failed to refresh build directory " + builddir
 								+ " in project: " + ideProject.getName(), e);
 					}
+					timings.end();
 				}
 				if (ObjectUtils.isNullOrEmpty(projectproperties.getExecutionDaemonConnectionName())) {
 					//set derived to the mirror directory only if the build is running in-process
 					SakerPath mirrordir = params.getMirrorDirectory();
 					if (mirrordir != null) {
+						timings.start(BuildPhaseTimings.PHASE_MIRROR_DIRECTORY);
 						try {
 							Path localmirrorpath = LocalFileProvider.toRealPath(mirrordir);
 							if (localmirrorpath.startsWith(projectpath)) {
@@ -1163,10 +1652,12 @@ public final class EclipseSakerIDEProject implements ExceptionDisplayer, ISakerP
 							displayException(SakerLog.SEVERITY_WARNING, "Failed to refresh build mirror directory "
 									+ mirrordir + " in project: " + ideProject.getName(), e);
 						}
+						timings.end();
 					}
 				}
 				TaskResultCollection resultcollection = result.getTaskResultCollection();
 				if (resultcollection != null) {
+					timings.start(BuildPhaseTimings.PHASE_IDE_CONFIGURATION);
 					try {
 						Collection<? extends IDEConfiguration> ideconfigs = resultcollection.getIDEConfigurations();
 						addIDEConfigurations(ideconfigs);
@@ -1174,12 +1665,14 @@ public final class EclipseSakerIDEProject implements ExceptionDisplayer, ISakerP
 						//do not throw IDE configuration related exception as this doesn't caues the build to fail
 						displayException(SakerLog.SEVERITY_WARNING, "Failed to set IDE configurations.", e);
 					}
+					timings.end();
 				}
 				return;
 			} catch (Throwable e) {
 				if (result == null) {
 					result = BuildTaskExecutionResultImpl.createInitializationFailed(e);
 					try {
+						buildout.flush();
 						out.write("Failed to initialize execution.\n".getBytes());
 					} catch (IOException e1) {
 						e1.printStackTrace();
@@ -1205,11 +1698,20 @@ public final class EclipseSakerIDEProject implements ExceptionDisplayer, ISakerP
 						}
 
 						consoleaccessor.stackTrace = posexcview;
-						TaskUtils.printTaskExceptionsOmitTransitive(posexcview, new PrintStream(err),
+						timings.start(BuildPhaseTimings.PHASE_EXCEPTION_PRINTING);
+						TaskUtils.printTaskExceptionsOmitTransitive(posexcview, new PrintStream(builderr),
 								executionworkingdir, exceptionformat);
+						timings.end();
 					}
 				}
-				IOException streamscloseexc = IOUtils.closeExc(out, err);
+				if (timings.hasPhase(BuildPhaseTimings.PHASE_BUILD)) {
+					printBuildTimings(timings, buildout, out, scriptfile, displaytargetname);
+					if (result != null) {
+						recordBuildHistory(scriptfile, targetname, parameterizedtargetuuid, buildstartmillis, result,
+								timings);
+					}
+				}
+				IOException streamscloseexc = IOUtils.closeExc(buildout, builderr);
 				if (streamscloseexc != null) {
 					displayException(SakerLog.SEVERITY_WARNING,
 							"Failed to close build console streams for project: " + ideProject.getName(),
@@ -1218,8 +1720,18 @@ public final class EclipseSakerIDEProject implements ExceptionDisplayer, ISakerP
 				if (locked) {
 					executionLock.unlock();
 				}
+				if (executingparallel) {
+					endParallelBuildExecution(parallelbuilddir);
+				}
+				if (parallelcounted) {
+					parallelBuildCount.decrementAndGet();
+				}
 			}
 		} finally {
+			if (markersstarted) {
+				//the stale markers of the target are removed when the build output is processed
+				markerbatcher.endBuild(markertarget);
+			}
 			console.endBuild(consoleaccessor);
 			if (wasinterrupted) {
 				Thread.currentThread().interrupt();
@@ -1227,6 +1739,186 @@ public final class EclipseSakerIDEProject implements ExceptionDisplayer, ISakerP
 		}
 	}
 
+	/**
+	 * Gets the build history of the project.
+	 * 
+	 * @return The history or <code>null</code> if the project doesn't have a working location.
+	 */
+	public BuildHistory getBuildHistory() {
+		synchronized (buildHistoryLock) {
+			if (buildHistory == null) {
+				IPath location = ideProject.getWorkingLocation(Activator.PLUGIN_ID);
+				if (location == null) {
+					return null;
+				}
+				buildHistory = new BuildHistory(location.toFile().toPath());
+			}
+			return buildHistory;
+		}
+	}
+
+	private void recordBuildHistory(SakerPath scriptfile, String targetname, String parameterizedtargetuuid,
+			long startmillis, BuildTaskExecutionResult result, BuildPhaseTimings timings) {
+		BuildHistory history = getBuildHistory();
+		if (history == null) {
+			return;
+		}
+		try {
+			SakerPath relativescriptpath = executionPathToProjectRelativePath(scriptfile);
+			history.append(new BuildHistory.Entry(
+					String.valueOf(ObjectUtils.nullDefault(relativescriptpath, scriptfile)), targetname,
+					parameterizedtargetuuid, startmillis, System.currentTimeMillis(),
+					String.valueOf(result.getResultKind()), timings.getPhaseMillis(BuildPhaseTimings.PHASE_BUILD),
+					timings.getIDEOverheadMillis()));
+		} catch (Exception e) {
+			displayException(SakerLog.SEVERITY_WARNING,
+					"Failed to record build history for project: " + ideProject.getName(), e);
+		}
+	}
+
+	/**
+	 * Prints the summary of the build timings to the console, and records them in the history file.
+	 */
+	private void printBuildTimings(BuildPhaseTimings timings, OutputStream buildout, OutputStream out,
+			SakerPath scriptfile, String displaytargetname) {
+		try {
+			//write the buffered output before the summary
+			buildout.flush();
+			out.write((timings.toSummaryString() + "\n").getBytes());
+		} catch (IOException e) {
+			//shouldnt happen, we don't display this exception to the user
+			e.printStackTrace();
+		}
+		Path plugindirectory = eclipseSakerPlugin.getPluginDirectory();
+		if (plugindirectory == null) {
+			return;
+		}
+		try {
+			timings.appendToHistory(plugindirectory, ideProject.getName(),
+					displaytargetname + "@" + executionPathToProjectRelativePath(scriptfile));
+		} catch (Exception e) {
+			displayException(SakerLog.SEVERITY_WARNING,
+					"Failed to record build timings for project: " + ideProject.getName(), e);
+		}
+	}
+
+	/**
+	 * Refreshes the resources in the folder that were modified since the given time.
+	 * <p>
+	 * The local file system is walked to find the directories and files with a modification time after the given
+	 * time. Directories are modified if an entry is added or removed in them, so they're refreshed one level deep.
+	 * Modified files in unmodified directories are refreshed individually.
+	 * 
+	 * @return The number of refreshed resources, or -1 if the modifications couldn't be determined, or there are too
+	 *             many of them.
+	 */
+	private static int refreshModifiedResources(IFolder folder, Path folderlocalpath, long sincemillis,
+			IProgressMonitor monitor) throws CoreException {
+		//the directories are collected in pre-order, so parent directories are refreshed first
+		Set<Path> modifieddirs = new LinkedHashSet<>();
+		List<Path> modifiedfiles = new ArrayList<>();
+		try {
+			Files.walkFileTree(folderlocalpath, new SimpleFileVisitor<Path>() {
+				@Override
+				public FileVisitResult preVisitDirectory(Path dir, BasicFileAttributes attrs) throws IOException {
+					if (attrs.lastModifiedTime().toMillis() >= sincemillis) {
+						modifieddirs.add(dir);
+					}
+					return checkLimit();
+				}
+
+				@Override
+				public FileVisitResult visitFile(Path file, BasicFileAttributes attrs) throws IOException {
+					if (attrs.lastModifiedTime().toMillis() >= sincemillis && !modifieddirs.contains(file.getParent())) {
+						modifiedfiles.add(file);
+					}
+					return checkLimit();
+				}
+
+				private FileVisitResult checkLimit() {
+					if (modifieddirs.size() + modifiedfiles.size() > SCOPED_REFRESH_RESOURCE_LIMIT) {
+						return FileVisitResult.TERMINATE;
+					}
+					return FileVisitResult.CONTINUE;
+				}
+			});
+		} catch (IOException e) {
+			return -1;
+		}
+		if (modifieddirs.size() + modifiedfiles.size() > SCOPED_REFRESH_RESOURCE_LIMIT) {
+			return -1;
+		}
+		for (Path dir : modifieddirs) {
+			IFolder dirfolder = dir.equals(folderlocalpath) ? folder
+					: folder.getFolder(folderlocalpath.relativize(dir).toString());
+			dirfolder.refreshLocal(IResource.DEPTH_ONE, monitor);
+		}
+		for (Path file : modifiedfiles) {
+			folder.getFile(folderlocalpath.relativize(file).toString()).refreshLocal(IResource.DEPTH_ZERO, monitor);
+		}
+		return modifieddirs.size() + modifiedfiles.size();
+	}
+
+	private static SakerPath getAbsoluteBuildDirectory(SakerPath builddir,
+			ExecutionPathConfiguration pathconfiguration) {
+		if (builddir == null) {
+			return null;
+		}
+		if (builddir.isRelative()) {
+			return pathconfiguration.getWorkingDirectory().resolve(builddir);
+		}
+		return builddir;
+	}
+
+	/**
+	 * Waits until no other build uses an overlapping build directory, and registers the build as executing.
+	 * <p>
+	 * Builds without a build directory are executed exclusively, as their outputs may still overlap with other
+	 * builds in the working directory.
+	 * 
+	 * @param builddir
+	 *            The absolute build directory of the build. May be <code>null</code>.
+	 * @param monitor
+	 *            The monitor to check for cancellation.
+	 * @return The number of executing builds including the started one, or -1 if the build was cancelled.
+	 * @throws InterruptedException
+	 *             If the current thread was interrupted.
+	 */
+	private int startParallelBuildExecution(SakerPath builddir, ProgressMonitorWrapper monitor)
+			throws InterruptedException {
+		synchronized (executingBuildDirectories) {
+			while (isBuildDirectoryExecutingLocked(builddir)) {
+				if (monitor.isCancelled()) {
+					return -1;
+				}
+				executingBuildDirectories.wait(BUILD_DIRECTORY_WAIT_MILLIS);
+			}
+			executingBuildDirectories.add(builddir);
+			return ++executingBuildCount;
+		}
+	}
+
+	private void endParallelBuildExecution(SakerPath builddir) {
+		synchronized (executingBuildDirectories) {
+			executingBuildDirectories.remove(builddir);
+			--executingBuildCount;
+			executingBuildDirectories.notifyAll();
+		}
+	}
+
+	private boolean isBuildDirectoryExecutingLocked(SakerPath builddir) {
+		if (builddir == null) {
+			//no build directory, the outputs may overlap with any other build
+			return !executingBuildDirectories.isEmpty();
+		}
+		for (SakerPath executingdir : executingBuildDirectories) {
+			if (executingdir == null || executingdir.startsWith(builddir) || builddir.startsWith(executingdir)) {
+				return true;
+			}
+		}
+		return false;
+	}
+
 	private void writeProjectConfigurationFile(Iterable<? extends ExtensionDisablement> disablements)
 			throws IOException {
 		Path propfilepath = projectConfigurationFilePath;
@@ -1299,23 +1991,26 @@ public final class EclipseSakerIDEProject implements ExceptionDisplayer, ISakerP
 			typeidentifierkinds
 					.add(ImmutableUtils.makeImmutableMapEntry(ideconfig.getType(), ideconfig.getIdentifier()));
 		}
-		ProjectIDEConfigurationCollection ideconfigcoll = getProjectIDEConfigurationCollection();
-		List<IDEConfiguration> nconfigs = new ArrayList<>(ideconfigcoll.getConfigurations());
-
-		//remove all configurations from the previous collection which have a type-identifier kind
-		//    that is being overwritten
-		for (Iterator<IDEConfiguration> it = nconfigs.iterator(); it.hasNext();) {
-			IDEConfiguration ideconfig = it.next();
-			Entry<String, String> entry = ImmutableUtils.makeImmutableMapEntry(ideconfig.getType(),
-					ideconfig.getIdentifier());
-			if (typeidentifierkinds.contains(entry)) {
-				it.remove();
+		//lock so the configurations of concurrently finishing builds are merged
+		synchronized (ideConfigurationLock) {
+			ProjectIDEConfigurationCollection ideconfigcoll = getProjectIDEConfigurationCollection();
+			List<IDEConfiguration> nconfigs = new ArrayList<>(ideconfigcoll.getConfigurations());
+
+			//remove all configurations from the previous collection which have a type-identifier kind
+			//    that is being overwritten
+			for (Iterator<IDEConfiguration> it = nconfigs.iterator(); it.hasNext();) {
+				IDEConfiguration ideconfig = it.next();
+				Entry<String, String> entry = ImmutableUtils.makeImmutableMapEntry(ideconfig.getType(),
+						ideconfig.getIdentifier());
+				if (typeidentifierkinds.contains(entry)) {
+					it.remove();
+				}
 			}
+			nconfigs.addAll(ideconfigs);
+			ProjectIDEConfigurationCollection nideconfiguration = new ProjectIDEConfigurationCollection(nconfigs);
+			//equality is checked by SakerIDEProject
+			sakerProject.setProjectIDEConfigurationCollection(nideconfiguration);
 		}
-		nconfigs.addAll(ideconfigs);
-		ProjectIDEConfigurationCollection nideconfiguration = new ProjectIDEConfigurationCollection(nconfigs);
-		//equality is checked by SakerIDEProject
-		sakerProject.setProjectIDEConfigurationCollection(nideconfiguration);
 	}
 
 	private AskListItem askBuildTarget() {
@@ -2040,14 +2735,17 @@ public final class EclipseSakerIDEProject implements ExceptionDisplayer, ISakerP
 
 	private final class DialogSecretInputReader implements SecretInputReader {
 		private final Display display;
+		private final Flushable outputFlusher;
 		private final Lock lock = new ReentrantLock();
 
-		public DialogSecretInputReader(Display display) {
+		public DialogSecretInputReader(Display display, Flushable outputFlusher) {
 			this.display = display;
+			this.outputFlusher = outputFlusher;
 		}
 
 		@Override
 		public String readSecret(String titleinfo, String message, String prompt, String secretidentifier) {
+			flushBeforePrompt(outputFlusher);
 			String[] res = { null };
 			lock.lock();
 			try {
@@ -2070,12 +2768,25 @@ public final class EclipseSakerIDEProject implements ExceptionDisplayer, ISakerP
 		}
 	}
 
+	private static void flushBeforePrompt(Flushable outputflusher) {
+		if (outputflusher == null) {
+			return;
+		}
+		try {
+			outputflusher.flush();
+		} catch (IOException e) {
+			//the prompt is still displayed, the output is written later if possible
+		}
+	}
+
 	private final class DialogBuildUserPromptHandler implements BuildUserPromptHandler {
 		private final Display display;
+		private final Flushable outputFlusher;
 		private final Lock lock = new ReentrantLock();
 
-		private DialogBuildUserPromptHandler(Display display) {
+		private DialogBuildUserPromptHandler(Display display, Flushable outputFlusher) {
 			this.display = display;
+			this.outputFlusher = outputFlusher;
 		}
 
 		@Override
@@ -2084,6 +2795,7 @@ public final class EclipseSakerIDEProject implements ExceptionDisplayer, ISakerP
 			if (options.isEmpty()) {
 				return -1;
 			}
+			flushBeforePrompt(outputFlusher);
 			int[] res = { -1 };
 			lock.lock();
 			try {
@@ -17,7 +17,6 @@ package saker.build.ide.eclipse;
 
 import java.io.IOException;
 import java.nio.file.Paths;
-import java.util.ServiceConfigurationError;
 
 import org.eclipse.core.resources.IFile;
 import org.eclipse.core.resources.IProject;
@@ -29,9 +28,6 @@ import org.eclipse.core.resources.IResourceDeltaVisitor;
 import org.eclipse.core.resources.ResourcesPlugin;
 import org.eclipse.core.runtime.CoreException;
 import org.eclipse.core.runtime.IProgressMonitor;
-import org.eclipse.core.runtime.IStatus;
-import org.eclipse.core.runtime.Status;
-import org.eclipse.core.runtime.jobs.Job;
 
 import saker.build.runtime.execution.SakerLog;
 import saker.build.thirdparty.saker.util.io.IOUtils;
@@ -61,19 +57,8 @@ public class ImplActivator implements AutoCloseable, IResourceChangeListener {
 				Paths.get(args.activator.getStateLocation().toFile().getAbsolutePath()));
 
 		sakerEclipseIDEPlugin = plugininstance;
-
-		new Job("Initializing saker.build plugin") {
-			@Override
-			protected IStatus run(IProgressMonitor monitor) {
-				try {
-					plugininstance.start(monitor);
-				} catch (Exception | LinkageError | StackOverflowError | OutOfMemoryError | AssertionError
-						| ServiceConfigurationError e) {
-					return new Status(IStatus.ERROR, Activator.PLUGIN_ID, "Failed to initialize saker.build plugin", e);
-				}
-				return Status.OK_STATUS;
-			}
-		}.schedule();
+		//the plugin environment is started when it is first used
+		//see EclipseSakerIDEPlugin.ensureStarted
 	}
 
 	public EclipseSakerIDEProject getOrCreateSakerProject(IProject project) {
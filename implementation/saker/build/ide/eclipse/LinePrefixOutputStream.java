@@ -0,0 +1,75 @@
+/*
+ * Copyright (C) 2020 Bence Sipka
+ *
+ * This program is free software: you can redistribute it and/or modify 
+ * it under the terms of the GNU General Public License as published by 
+ * the Free Software Foundation, version 3.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package saker.build.ide.eclipse;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * Output stream that inserts a prefix at the start of every line written to it.
+ * <p>
+ * Used to separate the output of builds that write to the same console concurrently.
+ */
+public class LinePrefixOutputStream extends OutputStream {
+	private final OutputStream out;
+	private final byte[] prefix;
+	private boolean lineStart = true;
+
+	public LinePrefixOutputStream(OutputStream out, String prefix) {
+		this.out = out;
+		this.prefix = prefix.getBytes(StandardCharsets.UTF_8);
+	}
+
+	@Override
+	public synchronized void write(int b) throws IOException {
+		if (lineStart) {
+			out.write(prefix);
+		}
+		out.write(b);
+		lineStart = b == '\n';
+	}
+
+	@Override
+	public synchronized void write(byte[] b, int off, int len) throws IOException {
+		int end = off + len;
+		int start = off;
+		for (int i = off; i < end; i++) {
+			if (lineStart) {
+				out.write(prefix);
+				lineStart = false;
+			}
+			if (b[i] == '\n') {
+				out.write(b, start, i + 1 - start);
+				start = i + 1;
+				lineStart = true;
+			}
+		}
+		if (start < end) {
+			out.write(b, start, end - start);
+		}
+	}
+
+	@Override
+	public void flush() throws IOException {
+		out.flush();
+	}
+
+	@Override
+	public void close() throws IOException {
+		out.close();
+	}
+}
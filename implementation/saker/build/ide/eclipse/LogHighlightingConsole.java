@@ -17,12 +17,14 @@ package saker.build.ide.eclipse;
 
 import java.nio.charset.StandardCharsets;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Collection;
-import java.util.LinkedHashMap;
-import java.util.Locale;
-import java.util.Map;
-import java.util.Map.Entry;
 
+import org.eclipse.jface.text.BadLocationException;
+import org.eclipse.jface.text.DocumentEvent;
+import org.eclipse.jface.text.IDocument;
+import org.eclipse.jface.text.IDocumentListener;
+import org.eclipse.jface.text.IRegion;
 import org.eclipse.jface.util.IPropertyChangeListener;
 import org.eclipse.jface.util.PropertyChangeEvent;
 import org.eclipse.swt.custom.LineBackgroundEvent;
@@ -63,31 +65,42 @@ public class LogHighlightingConsole extends IOConsole implements LineBackgroundL
 	protected IPageBookViewPage createdPage;
 	private volatile boolean initialized;
 
-	private Map<String, Color> lightSeverityColorMap = new LinkedHashMap<>();
-	private Map<String, Color> darkSeverityColorMap = new LinkedHashMap<>();
+	private static final byte SEVERITY_NONE = 0;
+	//in priority order
+	private static final byte SEVERITY_ERROR = 1;
+	private static final byte SEVERITY_INFO = 2;
+	private static final byte SEVERITY_WARNING = 3;
+	private static final byte SEVERITY_SUCCESS = 4;
+	private static final int SEVERITY_COUNT = 5;
+
+	private Color[] lightSeverityColors = new Color[SEVERITY_COUNT];
+	private Color[] darkSeverityColors = new Color[SEVERITY_COUNT];
 	private Collection<Color> colors = new ArrayList<>();
 
-	private Map<String, Color> currentThemeColorMap;
+	private Color[] currentThemeColors;
 	private IPropertyChangeListener themeListener;
 
+	private final LineSeverityIndex severityIndex = new LineSeverityIndex();
+
 	{
 		themeListener = new IPropertyChangeListener() {
 			@Override
 			public void propertyChange(PropertyChangeEvent event) {
 				if (BACKGROUND_COLOR_REGISTRY_PROPERTY_NAME.equals(event.getProperty())) {
 					RGB rgb = (RGB) event.getNewValue();
-					currentThemeColorMap = rgb.getHSB()[2] < 0.4f ? darkSeverityColorMap : lightSeverityColorMap;
+					currentThemeColors = rgb.getHSB()[2] < 0.4f ? darkSeverityColors : lightSeverityColors;
 				}
 			}
 		};
 		ITheme currentTheme = PlatformUI.getWorkbench().getThemeManager().getCurrentTheme();
 		currentTheme.getColorRegistry().addListener(themeListener);
 		RGB rgb = currentTheme.getColorRegistry().getRGB(BACKGROUND_COLOR_REGISTRY_PROPERTY_NAME);
-		currentThemeColorMap = rgb.getHSB()[2] < 0.4f ? darkSeverityColorMap : lightSeverityColorMap;
+		currentThemeColors = rgb.getHSB()[2] < 0.4f ? darkSeverityColors : lightSeverityColors;
 	}
 
 	public LogHighlightingConsole(String name, String consoleType) {
 		super(name, consoleType, null, StandardCharsets.UTF_8, true);
+		getDocument().addDocumentListener(severityIndex);
 	}
 
 	@Override
@@ -107,18 +120,15 @@ public class LogHighlightingConsole extends IOConsole implements LineBackgroundL
 				Color warndark = new Color(Display.getDefault(), 80, 77, 22);
 				Color successdark = new Color(Display.getDefault(), 28, 74, 23);
 
-				//put in prefix order
-				lightSeverityColorMap.put("fatal error", errorlight);
-				lightSeverityColorMap.put("error", errorlight);
-				lightSeverityColorMap.put("info", infolight);
-				lightSeverityColorMap.put("warning", warnlight);
-				lightSeverityColorMap.put("success", successlight);
+				lightSeverityColors[SEVERITY_ERROR] = errorlight;
+				lightSeverityColors[SEVERITY_INFO] = infolight;
+				lightSeverityColors[SEVERITY_WARNING] = warnlight;
+				lightSeverityColors[SEVERITY_SUCCESS] = successlight;
 
-				darkSeverityColorMap.put("fatal error", errordark);
-				darkSeverityColorMap.put("error", errordark);
-				darkSeverityColorMap.put("info", infodark);
-				darkSeverityColorMap.put("warning", warndark);
-				darkSeverityColorMap.put("success", successdark);
+				darkSeverityColors[SEVERITY_ERROR] = errordark;
+				darkSeverityColors[SEVERITY_INFO] = infodark;
+				darkSeverityColors[SEVERITY_WARNING] = warndark;
+				darkSeverityColors[SEVERITY_SUCCESS] = successdark;
 
 				colors.add(errorlight);
 				colors.add(infolight);
@@ -180,45 +190,96 @@ public class LogHighlightingConsole extends IOConsole implements LineBackgroundL
 
 	@Override
 	public void lineGetBackground(LineBackgroundEvent event) {
-		String line = event.lineText.toLowerCase(Locale.US);
-		for (Entry<String, Color> entry : currentThemeColorMap.entrySet()) {
-			String severitystr = entry.getKey();
-			int startidx = 0;
-			int sevstrlen = severitystr.length();
-			int linelen = line.length();
-			while (startidx + sevstrlen <= linelen) {
-				int idx = line.indexOf(severitystr, startidx);
-				if (idx < 0) {
+		int severity = severityIndex.getSeverity(((StyledText) event.widget).getLineAtOffset(event.lineOffset));
+		if (severity < 0) {
+			//not indexed
+			severity = getLineSeverity(event.lineText);
+		}
+		if (severity != SEVERITY_NONE) {
+			event.lineBackground = currentThemeColors[severity];
+		}
+	}
+
+	/**
+	 * Determines the severity to highlight the line with in a single pass over its characters.
+	 * <p>
+	 * A severity keyword is found if it is preceded by a whitespace, <code>')'</code>, <code>']'</code> or
+	 * <code>':'</code>, and followed by a whitespace or <code>':'</code>. If multiple keywords are found, the one with
+	 * the highest priority is returned. (Error, info, warning, success in order of priority.)
+	 */
+	static byte getLineSeverity(CharSequence line) {
+		byte result = SEVERITY_NONE;
+		int len = line.length();
+		for (int i = 0; i < len; i++) {
+			byte severity;
+			int keywordlen;
+			switch (Character.toLowerCase(line.charAt(i))) {
+				case 'e': {
+					//also covers "fatal error"
+					severity = SEVERITY_ERROR;
+					keywordlen = regionMatchesLowerCase(line, i, "error");
 					break;
 				}
-				if (idx + sevstrlen == linelen) {
-					//if no characters are after the severity, do not highlight the line
+				case 'i': {
+					severity = SEVERITY_INFO;
+					keywordlen = regionMatchesLowerCase(line, i, "info");
 					break;
 				}
-				startidx = idx + sevstrlen;
-				if (idx > 0) {
-					char beforec = line.charAt(idx - 1);
-					if (beforec != ')' && beforec != ']' && beforec != ':' && !Character.isWhitespace(beforec)) {
-						continue;
-					}
+				case 'w': {
+					severity = SEVERITY_WARNING;
+					keywordlen = regionMatchesLowerCase(line, i, "warning");
+					break;
+				}
+				case 's': {
+					severity = SEVERITY_SUCCESS;
+					keywordlen = regionMatchesLowerCase(line, i, "success");
+					break;
 				}
-				if (idx + sevstrlen < linelen) {
-					char afterc = line.charAt(idx + sevstrlen);
-					if (afterc != ':' && !Character.isWhitespace(afterc)) {
-						continue;
-					}
+				default: {
+					continue;
 				}
-				event.lineBackground = entry.getValue();
-				return;
+			}
+			if (keywordlen <= 0 || (result != SEVERITY_NONE && result <= severity)) {
+				continue;
+			}
+			int afteridx = i + keywordlen;
+			if (afteridx == len) {
+				//if no characters are after the severity, do not highlight the line
+				continue;
+			}
+			char afterc = line.charAt(afteridx);
+			if (afterc != ':' && !Character.isWhitespace(afterc)) {
+				continue;
+			}
+			if (i > 0) {
+				char beforec = line.charAt(i - 1);
+				if (beforec != ')' && beforec != ']' && beforec != ':' && !Character.isWhitespace(beforec)) {
+					continue;
+				}
+			}
+			result = severity;
+			if (severity == SEVERITY_ERROR) {
+				//highest priority
+				break;
 			}
 		}
-//		Matcher matcher = ProjectBuilder.CONSOLE_MARKER_PATTERN.matcher(event.lineText);
-//		if (matcher.matches()) {
-//			String severity = matcher.group(ProjectBuilder.CONSOLE_MARKER_GROUP_SEVERITY);
-//			if (severity != null) {
-//				event.lineBackground = severityColorMap.get(severity.toLowerCase());
-//			}
-//		}
+		return result;
+	}
+
+	/**
+	 * @return The length of the keyword if the line contains it at the given index, ignoring case. 0 otherwise.
+	 */
+	private static int regionMatchesLowerCase(CharSequence line, int idx, String keyword) {
+		int klen = keyword.length();
+		if (idx + klen > line.length()) {
+			return 0;
+		}
+		for (int i = 1; i < klen; i++) {
+			if (Character.toLowerCase(line.charAt(idx + i)) != keyword.charAt(i)) {
+				return 0;
+			}
+		}
+		return klen;
 	}
 
 	public synchronized void ensureInit() {
@@ -251,4 +312,83 @@ public class LogHighlightingConsole extends IOConsole implements LineBackgroundL
 	protected void doInitialization(StyledText widget) {
 	}
 
-}
\ No newline at end of file
+	/**
+	 * Index of the highlight severities of the console document lines.
+	 * <p>
+	 * The severities of the modified lines are computed when the document changes, so the paint callback only needs
+	 * to look them up. The index is only accessed on the UI thread, as the console document is modified there.
+	 */
+	private static final class LineSeverityIndex implements IDocumentListener {
+		private static final int MIN_CAPACITY = 1024;
+
+		private byte[] severities = new byte[MIN_CAPACITY];
+		private int lineCount = 0;
+
+		private int changeStartLine;
+		private int changeEndLine;
+		private int linesBeforeChange;
+
+		public int getSeverity(int line) {
+			if (line < 0 || line >= lineCount) {
+				return -1;
+			}
+			return severities[line];
+		}
+
+		@Override
+		public void documentAboutToBeChanged(DocumentEvent event) {
+			IDocument document = event.getDocument();
+			linesBeforeChange = document.getNumberOfLines();
+			try {
+				changeStartLine = document.getLineOfOffset(event.getOffset());
+				changeEndLine = document.getLineOfOffset(event.getOffset() + event.getLength());
+			} catch (BadLocationException e) {
+				//reindex everything
+				changeStartLine = 0;
+				changeEndLine = linesBeforeChange - 1;
+			}
+		}
+
+		@Override
+		public void documentChanged(DocumentEvent event) {
+			IDocument document = event.getDocument();
+			int lines = document.getNumberOfLines();
+			int startline = changeStartLine;
+			//the number of unchanged lines after the modified region
+			int tail = linesBeforeChange - changeEndLine - 1;
+			int changedend = lines - tail;
+			if (lineCount != linesBeforeChange || tail < 0 || changedend < startline) {
+				//the index is out of sync
+				startline = 0;
+				changedend = lines;
+				tail = 0;
+			}
+			byte[] nseverities = severities;
+			if (lines > nseverities.length) {
+				nseverities = Arrays.copyOf(nseverities, Math.max(lines, nseverities.length * 2));
+			} else if (nseverities.length > MIN_CAPACITY && lines < nseverities.length / 4) {
+				nseverities = Arrays.copyOf(nseverities, Math.max(MIN_CAPACITY, lines * 2));
+			}
+			if (tail > 0) {
+				System.arraycopy(severities, changeEndLine + 1, nseverities, changedend, tail);
+			}
+			severities = nseverities;
+			for (int line = startline; line < changedend; line++) {
+				severities[line] = computeSeverity(document, line);
+			}
+			lineCount = lines;
+		}
+
+		private static byte computeSeverity(IDocument document, int line) {
+			try {
+				IRegion region = document.getLineInformation(line);
+				if (region.getLength() == 0) {
+					return SEVERITY_NONE;
+				}
+				return getLineSeverity(document.get(region.getOffset(), region.getLength()));
+			} catch (BadLocationException e) {
+				return SEVERITY_NONE;
+			}
+		}
+	}
+}
@@ -26,7 +26,6 @@ import org.eclipse.core.runtime.CoreException;
 import org.eclipse.core.runtime.IProgressMonitor;
 import org.eclipse.core.runtime.IStatus;
 import org.eclipse.core.runtime.Status;
-import org.eclipse.core.runtime.jobs.Job;
 import org.eclipse.ui.console.ConsolePlugin;
 import org.eclipse.ui.console.IConsole;
 import org.eclipse.ui.console.IConsoleManager;
@@ -55,7 +54,7 @@ public class ProjectBuilder extends IncrementalProjectBuilder {
 	public ProjectBuilder() {
 	}
 
-	private static SakerProjectBuildConsole findExistingConsole(IProject project) {
+	static SakerProjectBuildConsole findExistingConsole(IProject project) {
 		String type = getProjectBuildConsoleType(project);
 		LogHighlightingConsole con = LogHighlightingConsole.findExistingConsole(type);
 		if (con != null) {
@@ -95,31 +94,14 @@ public class ProjectBuilder extends IncrementalProjectBuilder {
 		String displaytargetname = SakerIDESupportUtils.getParameterizedBuildTargetDisplayString(parambuildtarget);
 
 		String jobname = createBuildJobName(scriptpath, displaytargetname, sakereclipseproject);
-		Job j = new Job(jobname) {
-			@Override
-			protected IStatus run(IProgressMonitor monitor) {
-				sakereclipseproject.build(parambuildtarget, monitor);
-
-				return Status.OK_STATUS;
-			}
-		};
-		j.setPriority(Job.BUILD);
-		j.schedule();
-
+		sakereclipseproject.scheduleBuildJob(scriptpath, parambuildtarget.getTargetName(), parambuildtarget.getUuid(),
+				jobname, monitor -> sakereclipseproject.build(parambuildtarget, monitor));
 	}
 
 	public static void buildAsync(EclipseSakerIDEProject project, SakerPath scriptpath, String targetname) {
 		String jobname = createBuildJobName(scriptpath, targetname, project);
-		Job j = new Job(jobname) {
-			@Override
-			protected IStatus run(IProgressMonitor monitor) {
-				project.build(scriptpath, targetname, monitor);
-
-				return Status.OK_STATUS;
-			}
-		};
-		j.setPriority(Job.BUILD);
-		j.schedule();
+		project.scheduleBuildJob(scriptpath, targetname, null, jobname,
+				monitor -> project.build(scriptpath, targetname, monitor));
 	}
 
 	private static String createBuildJobName(SakerPath scriptpath, String targetname, EclipseSakerIDEProject project) {
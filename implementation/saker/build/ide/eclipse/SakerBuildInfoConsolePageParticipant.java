@@ -48,6 +48,8 @@ public class SakerBuildInfoConsolePageParticipant implements IConsolePagePartici
 			.getImageDescriptor(ISharedImages.IMG_ELCL_STOP);
 	private static final ImageDescriptor IMAGE_DESCRIPTOR_STOP_DISABLED = PlatformUI.getWorkbench().getSharedImages()
 			.getImageDescriptor(ISharedImages.IMG_ELCL_STOP_DISABLED);
+	private static final ImageDescriptor IMAGE_DESCRIPTOR_OPEN_OUTPUT = PlatformUI.getWorkbench().getSharedImages()
+			.getImageDescriptor(ISharedImages.IMG_OBJ_FILE);
 
 	private IPageBookViewPage page;
 
@@ -81,6 +83,7 @@ public class SakerBuildInfoConsolePageParticipant implements IConsolePagePartici
 
 		stopBuildAction = new StopAction(TEXT_STOP_BUILD, IMAGE_DESCRIPTOR_STOP);
 		tbm.appendToGroup(IConsoleConstants.LAUNCH_GROUP, stopBuildAction);
+		tbm.appendToGroup(IConsoleConstants.OUTPUT_GROUP, new OpenCompleteOutputAction());
 	}
 
 	@Override
@@ -138,6 +141,23 @@ public class SakerBuildInfoConsolePageParticipant implements IConsolePagePartici
 		}
 	}
 
+	private final class OpenCompleteOutputAction extends Action {
+		public OpenCompleteOutputAction() {
+			super("Open complete build output", IMAGE_DESCRIPTOR_OPEN_OUTPUT);
+		}
+
+		@Override
+		public void run() {
+			SakerProjectBuildConsole console;
+			synchronized (SakerBuildInfoConsolePageParticipant.this) {
+				console = SakerBuildInfoConsolePageParticipant.this.console;
+			}
+			if (console != null) {
+				console.openCompleteOutput();
+			}
+		}
+	}
+
 	private final class PrintCompleteStacktraceAction extends Action {
 		private StackTraceAccessor stacktrace;
 
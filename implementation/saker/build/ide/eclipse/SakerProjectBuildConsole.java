@@ -17,30 +17,48 @@ package saker.build.ide.eclipse;
 
 import java.io.IOException;
 import java.io.PrintStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
 import java.util.Collections;
 import java.util.HashMap;
 import java.util.HashSet;
+import java.util.LinkedHashMap;
 import java.util.Map;
 import java.util.Set;
 import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
 import java.util.regex.Matcher;
 import java.util.regex.Pattern;
 
+import org.eclipse.core.filesystem.EFS;
 import org.eclipse.core.resources.IFile;
 import org.eclipse.core.resources.IMarker;
-import org.eclipse.core.runtime.CoreException;
+import org.eclipse.core.runtime.IProgressMonitor;
+import org.eclipse.core.runtime.IStatus;
+import org.eclipse.core.runtime.Status;
+import org.eclipse.core.runtime.jobs.Job;
 import org.eclipse.jface.text.BadLocationException;
+import org.eclipse.jface.text.DocumentEvent;
+import org.eclipse.jface.text.IDocument;
+import org.eclipse.jface.text.IDocumentListener;
 import org.eclipse.swt.SWT;
 import org.eclipse.swt.custom.LineStyleEvent;
 import org.eclipse.swt.custom.LineStyleListener;
 import org.eclipse.swt.custom.StyleRange;
 import org.eclipse.swt.custom.StyledText;
 import org.eclipse.swt.widgets.Display;
+import org.eclipse.ui.IWorkbenchPage;
+import org.eclipse.ui.IWorkbenchWindow;
 import org.eclipse.ui.PlatformUI;
 import org.eclipse.ui.console.IOConsoleOutputStream;
 import org.eclipse.ui.console.IPatternMatchListener;
 import org.eclipse.ui.console.PatternMatchEvent;
 import org.eclipse.ui.console.TextConsole;
+import org.eclipse.ui.ide.IDE;
 
 import saker.build.exception.ScriptPositionedExceptionView;
 import saker.build.file.path.SakerPath;
@@ -60,15 +78,53 @@ public class SakerProjectBuildConsole extends LogHighlightingConsole implements
 	private static final int STACKTRACE_GROUP_MESSAGE = 8;
 
 	private static final String CONSOLE_MARKER_STR_PATTERN = "[ \t]*(\\[(?:.*?)\\])?[ \t]*(((.*?)(:(-?[0-9]+)(:([0-9]*)(-([0-9]+))?)?)?):)?[ ]*([wW]arning|[eE]rror|[iI]nfo|[sS]uccess|[fF]atal [eE]rror):[ ]*(.*)";
-	private static final int CONSOLE_MARKER_GROUP_DISPLAY_ID = 1;
-	private static final int CONSOLE_MARKER_GROUP_PATHANDLOCATION = 3;
-	private static final int CONSOLE_MARKER_GROUP_FILEPATH = 4;
-	private static final int CONSOLE_MARKER_GROUP_LINE = 6;
-	private static final int CONSOLE_MARKER_GROUP_LINESTART = 8;
-	private static final int CONSOLE_MARKER_GROUP_LINEEND = 10;
-	private static final int CONSOLE_MARKER_GROUP_SEVERITY = 11;
-	private static final int CONSOLE_MARKER_GROUP_MESSAGE = 12;
-	private static final Pattern CONSOLE_MARKER_PATTERN = Pattern.compile(CONSOLE_MARKER_STR_PATTERN);
+	/**
+	 * Simple pattern for the lines that may match {@link #CONSOLE_MARKER_STR_PATTERN}.
+	 */
+	private static final String CONSOLE_MARKER_LINE_QUALIFIER = "rror:|arning:|nfo:|uccess:";
+	static final int CONSOLE_MARKER_GROUP_DISPLAY_ID = 1;
+	static final int CONSOLE_MARKER_GROUP_PATHANDLOCATION = 3;
+	static final int CONSOLE_MARKER_GROUP_FILEPATH = 4;
+	static final int CONSOLE_MARKER_GROUP_LINE = 6;
+	static final int CONSOLE_MARKER_GROUP_LINESTART = 8;
+	static final int CONSOLE_MARKER_GROUP_LINEEND = 10;
+	static final int CONSOLE_MARKER_GROUP_SEVERITY = 11;
+	static final int CONSOLE_MARKER_GROUP_MESSAGE = 12;
+	static final Pattern CONSOLE_MARKER_PATTERN = Pattern.compile(CONSOLE_MARKER_STR_PATTERN);
+
+	/**
+	 * Flag to create the build markers by matching the console lines instead of scanning the build output for
+	 * {@link BuildDiagnostic BuildDiagnostics}. Can be set with the
+	 * <code>saker.build.ide.eclipse.build.console.markers</code> system property.
+	 */
+	public static final boolean CONSOLE_MARKERS = Boolean.getBoolean(Activator.PLUGIN_ID + ".build.console.markers");
+	/**
+	 * The maximum number of characters kept in the console document. The oldest output is trimmed from the console
+	 * and spilled to a compressed temporary file if the capacity is exceeded. Can be configured with the
+	 * <code>saker.build.ide.eclipse.build.console.capacity</code> system property. 0 or negative means unlimited.
+	 */
+	private static final int CONSOLE_CAPACITY = Integer.getInteger(Activator.PLUGIN_ID + ".build.console.capacity",
+			4 * 1024 * 1024);
+
+	/**
+	 * The number of the last output sections whose build targets are remembered for attributing the markers created
+	 * from the console lines.
+	 */
+	private static final int OUTPUT_SECTION_TARGETS_SIZE = 64;
+
+	/**
+	 * Executor that writes the output trimmed from the consoles to their histories, so the console document updates
+	 * are not blocked by the compression and the disk writes. The tasks are run in the order they are submitted.
+	 */
+	private static final ThreadPoolExecutor HISTORY_EXECUTOR;
+	static {
+		HISTORY_EXECUTOR = new ThreadPoolExecutor(1, 1, 5, TimeUnit.SECONDS, new LinkedBlockingQueue<>(), r -> {
+			Thread t = new Thread(r, "Build console history writer");
+			t.setDaemon(true);
+			return t;
+		});
+		HISTORY_EXECUTOR.allowCoreThreadTimeOut(true);
+	}
 
 	private static final Map<String, Integer> MARKER_SEVERITY_MAP = new HashMap<>();
 
@@ -83,9 +139,35 @@ public class SakerProjectBuildConsole extends LogHighlightingConsole implements
 
 	private final Set<BuildStateObserver> buildStateObservers = ConcurrentHashMap.newKeySet();
 
+	private final BuildMarkerBatcher markerBatcher;
+	private final BuildConsoleHistory history = new BuildConsoleHistory();
+	private final AtomicInteger outputSectionCounter = new AtomicInteger();
+	/**
+	 * The build targets of the last output sections mapped by their numbers. Guarded by itself.
+	 */
+	private final Map<Integer, Object> outputSectionTargets = new LinkedHashMap<Integer, Object>() {
+		private static final long serialVersionUID = 1L;
+
+		@Override
+		protected boolean removeEldestEntry(Map.Entry<Integer, Object> eldest) {
+			return size() > OUTPUT_SECTION_TARGETS_SIZE;
+		}
+	};
+	/**
+	 * The build target of the output lines that are not in an output section.
+	 */
+	private volatile Object outputTarget;
+
 	public SakerProjectBuildConsole(EclipseSakerIDEProject project, String name, String consoleType) {
 		super(name, consoleType);
 		this.project = project;
+		this.markerBatcher = new BuildMarkerBatcher(project);
+		if (CONSOLE_CAPACITY > 0) {
+			int capacity = Math.max(CONSOLE_CAPACITY, 1024);
+			//trim to 80% of the capacity when exceeded
+			setWaterMarks(capacity - capacity / 5, capacity);
+			getDocument().addDocumentListener(new HistorySpillDocumentListener());
+		}
 		this.addPatternMatchListener(new BuildErrorPatternMatcher(project, this));
 		this.addPatternMatchListener(new ExecutionErrorPatternMatcher(project, this));
 		this.addPatternMatchListener(new BuildErrorStackPatternMatcher(project, this));
@@ -95,12 +177,214 @@ public class SakerProjectBuildConsole extends LogHighlightingConsole implements
 		return project;
 	}
 
+	public BuildMarkerBatcher getMarkerBatcher() {
+		return markerBatcher;
+	}
+
+	/**
+	 * Creates a build marker for the diagnostic if it is reported for a file in the project.
+	 * 
+	 * @param target
+	 *            The key of the build target that reported the diagnostic.
+	 * @param diagnostic
+	 *            The diagnostic.
+	 */
+	public void reportDiagnostic(Object target, BuildDiagnostic diagnostic) {
+		IFile projectfile = project.getIFileAtExecutionPath(diagnostic.getPath());
+		if (projectfile == null) {
+			return;
+		}
+		markerBatcher.add(target, new BuildMarkerBatcher.MarkerDescriptor(projectfile, diagnostic.getLineNumber(),
+				diagnostic.getStartColumn(), diagnostic.getEndColumn(), diagnostic.getSeverity(),
+				diagnostic.getMessage()));
+	}
+
+	/**
+	 * Creates the line prefix for the output section of a build that writes to the console concurrently with other
+	 * builds.
+	 * <p>
+	 * The prefix is <code>#N&gt; </code> where N is the sequence number of the section.
+	 * 
+	 * @param target
+	 *            The key of the build target that writes the output section.
+	 */
+	public String createOutputSectionPrefix(Object target) {
+		int number = outputSectionCounter.incrementAndGet();
+		synchronized (outputSectionTargets) {
+			outputSectionTargets.put(number, target);
+		}
+		return "#" + number + "> ";
+	}
+
+	/**
+	 * Sets the build target that writes the output lines without an output section prefix.
+	 * 
+	 * @param target
+	 *            The key of the build target.
+	 */
+	public void setOutputTarget(Object target) {
+		this.outputTarget = target;
+	}
+
+	/**
+	 * Gets the build target that wrote the given output line.
+	 * 
+	 * @param line
+	 *            The output line.
+	 * @param prefixlength
+	 *            The length of the output section prefix in the line.
+	 * @return The key of the build target, or <code>null</code> if not known.
+	 * @see #getOutputSectionPrefixLength(CharSequence)
+	 */
+	Object getOutputTarget(String line, int prefixlength) {
+		if (prefixlength == 0) {
+			return outputTarget;
+		}
+		int number;
+		try {
+			number = Integer.parseInt(line.substring(1, prefixlength - 2));
+		} catch (NumberFormatException e) {
+			return null;
+		}
+		synchronized (outputSectionTargets) {
+			return outputSectionTargets.get(number);
+		}
+	}
+
+	/**
+	 * Gets the length of the output section prefix at the start of the line.
+	 * 
+	 * @return The length of the prefix, or 0 if the line doesn't start with one.
+	 * @see #createOutputSectionPrefix(Object)
+	 */
+	static int getOutputSectionPrefixLength(CharSequence line) {
+		int len = line.length();
+		if (len == 0 || line.charAt(0) != '#') {
+			return 0;
+		}
+		int i = 1;
+		while (i < len && line.charAt(i) >= '0' && line.charAt(i) <= '9') {
+			++i;
+		}
+		if (i == 1 || i + 1 >= len || line.charAt(i) != '>' || line.charAt(i + 1) != ' ') {
+			return 0;
+		}
+		return i + 2;
+	}
+
+	static int getMarkerSeverity(String severity) {
+		return MARKER_SEVERITY_MAP.getOrDefault(severity.toLowerCase(), IMarker.SEVERITY_INFO);
+	}
+
+	static String createMarkerMessage(String displayid, String severity, String message) {
+		if (message != null) {
+			message = message.trim();
+		}
+		StringBuilder markermessagesb = new StringBuilder();
+		if (!ObjectUtils.isNullOrEmpty(displayid)) {
+			markermessagesb.append(displayid);
+		}
+		markermessagesb.append(severity);
+		if (!ObjectUtils.isNullOrEmpty(message)) {
+			markermessagesb.append(": ");
+			markermessagesb.append(message);
+		}
+		return markermessagesb.toString();
+	}
+
 	//protected method made public
 	@Override
 	public void setName(String name) {
 		super.setName(name);
 	}
 
+	public BuildConsoleHistory getHistory() {
+		return history;
+	}
+
+	/**
+	 * Opens the complete output of the console in an editor, including the output that was trimmed from the console.
+	 */
+	public void openCompleteOutput() {
+		Display display = PlatformUI.getWorkbench().getDisplay();
+		String contents = getDocument().get();
+		Job job = new Job("Opening build console output") {
+			@Override
+			protected IStatus run(IProgressMonitor monitor) {
+				Path file;
+				try {
+					//wait for the trimmed output to be written to the history
+					flushHistoryWrites();
+				} catch (InterruptedException e) {
+					return Status.CANCEL_STATUS;
+				}
+				try {
+					file = Files.createTempFile("saker-build-output-", ".txt");
+					file.toFile().deleteOnExit();
+					history.export(file, contents);
+				} catch (IOException e) {
+					project.displayException(SakerLog.SEVERITY_WARNING,
+							"Failed to export build console output for project: " + project.getProject().getName(),
+							e);
+					return Status.OK_STATUS;
+				}
+				display.asyncExec(() -> {
+					IWorkbenchWindow window = PlatformUI.getWorkbench().getActiveWorkbenchWindow();
+					if (window == null) {
+						return;
+					}
+					IWorkbenchPage page = window.getActivePage();
+					if (page == null) {
+						return;
+					}
+					try {
+						IDE.openEditorOnFileStore(page, EFS.getLocalFileSystem().getStore(file.toUri()));
+					} catch (Exception e) {
+						project.displayException(SakerLog.SEVERITY_WARNING,
+								"Failed to open build console output for project: " + project.getProject().getName(),
+								e);
+					}
+				});
+				return Status.OK_STATUS;
+			}
+		};
+		job.setSystem(true);
+		job.schedule();
+	}
+
+	@Override
+	protected void dispose() {
+		super.dispose();
+		submitHistoryWrite(history::close, "Failed to delete build console history for project: ");
+	}
+
+	@FunctionalInterface
+	private interface HistoryWrite {
+		public void run() throws IOException;
+	}
+
+	private void submitHistoryWrite(HistoryWrite write, String failmessage) {
+		HISTORY_EXECUTOR.execute(() -> {
+			try {
+				write.run();
+			} catch (IOException e) {
+				project.displayException(SakerLog.SEVERITY_WARNING, failmessage + project.getProject().getName(), e);
+			}
+		});
+	}
+
+	/**
+	 * Waits for the previously submitted history writes to finish.
+	 */
+	private static void flushHistoryWrites() throws InterruptedException {
+		try {
+			HISTORY_EXECUTOR.submit(() -> {
+			}).get();
+		} catch (ExecutionException e) {
+			//the empty task doesn't fail
+		}
+	}
+
 	public void startBuild(BuildInterfaceAccessor buildaccessor) {
 		buildStateObservers.forEach(o -> o.buildStarted(buildaccessor));
 	}
@@ -119,6 +403,15 @@ public class SakerProjectBuildConsole extends LogHighlightingConsole implements
 		buildStateObservers.remove(observer);
 	}
 
+	public void printBuildQueueMessage(String message) {
+		try (IOConsoleOutputStream out = newOutputStream()) {
+			out.write(message + "\n");
+		} catch (IOException e) {
+			project.displayException(SakerLog.SEVERITY_WARNING,
+					"Failed to print build queue message for project: " + project.getProject().getName(), e);
+		}
+	}
+
 	public void printCompleteStackTrace(ScriptPositionedExceptionView exc) {
 		try (IOConsoleOutputStream err = newOutputStream()) {
 			Display display = PlatformUI.getWorkbench().getDisplay();
@@ -141,13 +434,15 @@ public class SakerProjectBuildConsole extends LogHighlightingConsole implements
 			@Override
 			public void lineGetStyle(LineStyleEvent ls) {
 				String txt = ls.lineText;
-				if (txt.length() < 2) {
+				//the brackets are after the output section prefix if any
+				int start = getOutputSectionPrefixLength(txt);
+				if (txt.length() - start < 2) {
 					return;
 				}
-				if (txt.charAt(0) != '[') {
+				if (txt.charAt(start) != '[') {
 					return;
 				}
-				int closeidx = txt.indexOf(']');
+				int closeidx = txt.indexOf(']', start);
 				if (closeidx < 0) {
 					return;
 				}
@@ -163,7 +458,8 @@ public class SakerProjectBuildConsole extends LogHighlightingConsole implements
 
 				//if we pass 0 as the length, a single character is highlighted (based on tests)
 
-				StyleRange nstyle = new StyleRange(ls.lineOffset + 1, closeidx - 2, null, null, SWT.ITALIC);
+				StyleRange nstyle = new StyleRange(ls.lineOffset + start + 1, closeidx - start - 2, null, null,
+						SWT.ITALIC);
 				if (ls.styles == null) {
 					ls.styles = new StyleRange[] { nstyle };
 				} else {
@@ -173,6 +469,41 @@ public class SakerProjectBuildConsole extends LogHighlightingConsole implements
 		});
 	}
 
+	/**
+	 * Spills the output trimmed from the console document to the history, and resets the history when the console is
+	 * cleared.
+	 * <p>
+	 * The trimmed text is copied in the listener, and written to the history in the background.
+	 */
+	private final class HistorySpillDocumentListener implements IDocumentListener {
+		@Override
+		public void documentAboutToBeChanged(DocumentEvent event) {
+			if (event.getOffset() != 0 || event.getLength() == 0 || !ObjectUtils.isNullOrEmpty(event.getText())) {
+				//not a removal from the start
+				return;
+			}
+			IDocument document = event.getDocument();
+			if (event.getLength() >= document.getLength()) {
+				//cleared
+				submitHistoryWrite(history::reset, "Failed to reset build console history for project: ");
+				return;
+			}
+			String text;
+			try {
+				text = document.get(0, event.getLength());
+			} catch (BadLocationException e) {
+				project.displayException(SakerLog.SEVERITY_WARNING,
+						"Failed to save build console history for project: " + project.getProject().getName(), e);
+				return;
+			}
+			submitHistoryWrite(() -> history.append(text), "Failed to save build console history for project: ");
+		}
+
+		@Override
+		public void documentChanged(DocumentEvent event) {
+		}
+	}
+
 	public static final class BuildErrorStackPatternMatcher implements IPatternMatchListener {
 		public static final String STRPATTERN = "[ \\t]+at[ \\t]+(.*):([0-9]+):([0-9]+)-([0-9]+)";
 		public static final Pattern PATTERN = Pattern.compile(STRPATTERN);
@@ -249,9 +580,9 @@ public class SakerProjectBuildConsole extends LogHighlightingConsole implements
 
 	public static final class BuildErrorPatternMatcher implements IPatternMatchListener {
 		private final EclipseSakerIDEProject project;
-		private final LogHighlightingConsole console;
+		private final SakerProjectBuildConsole console;
 
-		public BuildErrorPatternMatcher(EclipseSakerIDEProject sakerideproject, LogHighlightingConsole console) {
+		public BuildErrorPatternMatcher(EclipseSakerIDEProject sakerideproject, SakerProjectBuildConsole console) {
 			this.project = sakerideproject;
 			this.console = console;
 		}
@@ -260,6 +591,11 @@ public class SakerProjectBuildConsole extends LogHighlightingConsole implements
 		public void matchFound(PatternMatchEvent event) {
 			try {
 				String input = console.getDocument().get(event.getOffset(), event.getLength());
+				//skip the output section prefix, so it is not matched as part of the file path
+				int prefixlen = getOutputSectionPrefixLength(input);
+				Object target = console.getOutputTarget(input, prefixlen);
+				input = input.substring(prefixlen);
+				int inputoffset = event.getOffset() + prefixlen;
 				Matcher matcher = CONSOLE_MARKER_PATTERN.matcher(input);
 				if (!matcher.matches()) {
 					return;
@@ -292,39 +628,18 @@ public class SakerProjectBuildConsole extends LogHighlightingConsole implements
 						SakerPath filepath = SakerPath.valueOf(file);
 						IFile projectfile = project.getIFileAtExecutionPath(filepath);
 						if (projectfile != null) {
-							String message = matcher.group(CONSOLE_MARKER_GROUP_MESSAGE);
-							String displayid = matcher.group(CONSOLE_MARKER_GROUP_DISPLAY_ID);
-							String severity = matcher.group(CONSOLE_MARKER_GROUP_SEVERITY);
-
-							if (message != null) {
-								message = message.trim();
-							}
 							console.addHyperlink(new IFileHyperLink(projectfile, linenumber, linestart, lineend),
-									event.getOffset() + matcher.start(CONSOLE_MARKER_GROUP_PATHANDLOCATION),
+									inputoffset + matcher.start(CONSOLE_MARKER_GROUP_PATHANDLOCATION),
 									pathwithlocation.length());
 
-							if (severity != null) {
-								IMarker marker = projectfile.createMarker(ProjectBuilder.MARKER_TYPE);
-								marker.setAttribute(IMarker.SEVERITY, MARKER_SEVERITY_MAP
-										.getOrDefault(severity.toLowerCase(), IMarker.SEVERITY_INFO));
-								marker.setAttribute(IMarker.LINE_NUMBER, linenumber);
-								// if (linestart != null && linestart.length() > 0) {
-								// marker.setAttribute(IMarker.CHAR_START, Integer.parseInt(linestart));
-								// }
-								// if (lineend != null && lineend.length() > 0) {
-								// marker.setAttribute(IMarker.CHAR_END, Integer.parseInt(lineend));
-								// }
-								StringBuilder markermessagesb = new StringBuilder();
-								if (!ObjectUtils.isNullOrEmpty(displayid)) {
-									markermessagesb.append(displayid);
-								}
-								markermessagesb.append(severity);
-								if (!ObjectUtils.isNullOrEmpty(message)) {
-									markermessagesb.append(": ");
-									markermessagesb.append(message);
-								}
-								String markermessage = markermessagesb.toString();
-								marker.setAttribute(IMarker.MESSAGE, markermessage);
+							String severity = matcher.group(CONSOLE_MARKER_GROUP_SEVERITY);
+							//the markers are created from the structured diagnostics by default
+							if (CONSOLE_MARKERS && severity != null && target != null) {
+								String markermessage = createMarkerMessage(
+										matcher.group(CONSOLE_MARKER_GROUP_DISPLAY_ID), severity,
+										matcher.group(CONSOLE_MARKER_GROUP_MESSAGE));
+								console.getMarkerBatcher().add(target, new BuildMarkerBatcher.MarkerDescriptor(
+										projectfile, linenumber, getMarkerSeverity(severity), markermessage));
 							}
 						}
 //						else if (projectfile instanceof IFileStore) {
@@ -333,7 +648,7 @@ public class SakerProjectBuildConsole extends LogHighlightingConsole implements
 //									event.getOffset() + matcher.start(CONSOLE_MARKER_GROUP_PATHANDLOCATION),
 //									pathwithlocation.length());
 //						}
-					} catch (CoreException | IllegalArgumentException e) {
+					} catch (IllegalArgumentException e) {
 						//for parsing errors
 					}
 				}
@@ -358,7 +673,7 @@ public class SakerProjectBuildConsole extends LogHighlightingConsole implements
 
 		@Override
 		public String getLineQualifier() {
-			return null;
+			return CONSOLE_MARKER_LINE_QUALIFIER;
 		}
 
 		@Override
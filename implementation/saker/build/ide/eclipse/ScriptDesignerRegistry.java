@@ -0,0 +1,207 @@
+/*
+ * Copyright (C) 2020 Bence Sipka
+ *
+ * This program is free software: you can redistribute it and/or modify 
+ * it under the terms of the GNU General Public License as published by 
+ * the Free Software Foundation, version 3.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package saker.build.ide.eclipse;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.Function;
+
+import org.eclipse.core.runtime.IConfigurationElement;
+import org.eclipse.core.runtime.IExtension;
+import org.eclipse.core.runtime.IExtensionPoint;
+import org.eclipse.core.runtime.IRegistryEventListener;
+import org.eclipse.core.runtime.Platform;
+
+import saker.build.runtime.execution.SakerLog;
+
+/**
+ * Resolves and instantiates the script designer extensions of an extension point.
+ * <p>
+ * The designer extensions are instantiated once, and the designers composed for a given set of schema identifiers
+ * are cached. The cache is invalidated when extensions are added or removed for the extension point, or if the
+ * extension disablements change.
+ *
+ * @param <T>
+ *            The designer type.
+ */
+public final class ScriptDesignerRegistry<T> implements IRegistryEventListener {
+	private static final Object NO_DESIGNER = new Object();
+
+	private final EclipseSakerIDEPlugin plugin;
+	private final String extensionPointId;
+	private final Class<T> designerType;
+	private final Function<? super List<T>, ? extends T> multiDesignerCreator;
+
+	private final Map<Set<String>, Object> composedDesigners = new ConcurrentHashMap<>();
+
+	private final Object extensionsLock = new Object();
+	private List<DesignerExtension<T>> extensions;
+	private Set<ExtensionDisablement> extensionDisablements = Collections.emptySet();
+	/**
+	 * Incremented on every invalidation, so designers composed from out of date extensions are not cached.
+	 */
+	private int generation;
+
+	public ScriptDesignerRegistry(EclipseSakerIDEPlugin plugin, String extensionPointId, Class<T> designerType,
+			Function<? super List<T>, ? extends T> multiDesignerCreator) {
+		this.plugin = plugin;
+		this.extensionPointId = extensionPointId;
+		this.designerType = designerType;
+		this.multiDesignerCreator = multiDesignerCreator;
+	}
+
+	public String getExtensionPointId() {
+		return extensionPointId;
+	}
+
+	/**
+	 * Gets the designer that should be used for the given schema identifiers.
+	 * <p>
+	 * Designer extensions without a declared schema identifier are applicable to all schemas.
+	 *
+	 * @return The designer or <code>null</code> if there are no applicable designers.
+	 */
+	@SuppressWarnings("unchecked")
+	public T getDesigner(Set<String> schemaidentifiers) {
+		Objects.requireNonNull(schemaidentifiers, "schema identifiers");
+		Object cached = composedDesigners.get(schemaidentifiers);
+		if (cached != null) {
+			return cached == NO_DESIGNER ? null : (T) cached;
+		}
+		Set<String> key = Collections.unmodifiableSet(new HashSet<>(schemaidentifiers));
+		List<DesignerExtension<T>> exts;
+		int gen;
+		synchronized (extensionsLock) {
+			exts = getExtensionsLocked();
+			gen = generation;
+		}
+		List<T> designers = new ArrayList<>();
+		for (DesignerExtension<T> ext : exts) {
+			if (ext.schemaId != null && !key.contains(ext.schemaId)) {
+				//can't use
+				continue;
+			}
+			designers.add(ext.designer);
+		}
+		T result;
+		if (designers.isEmpty()) {
+			result = null;
+		} else if (designers.size() == 1) {
+			result = designers.get(0);
+		} else {
+			result = multiDesignerCreator.apply(designers);
+		}
+		synchronized (extensionsLock) {
+			if (gen == generation) {
+				composedDesigners.put(key, result == null ? NO_DESIGNER : result);
+			}
+		}
+		return result;
+	}
+
+	public void setExtensionDisablements(Set<ExtensionDisablement> disablements) {
+		synchronized (extensionsLock) {
+			if (this.extensionDisablements.equals(disablements)) {
+				return;
+			}
+			this.extensionDisablements = Collections.unmodifiableSet(new HashSet<>(disablements));
+			invalidateLocked();
+		}
+	}
+
+	public void invalidate() {
+		synchronized (extensionsLock) {
+			invalidateLocked();
+		}
+	}
+
+	@Override
+	public void added(IExtension[] extensions) {
+		invalidate();
+	}
+
+	@Override
+	public void removed(IExtension[] extensions) {
+		invalidate();
+	}
+
+	@Override
+	public void added(IExtensionPoint[] extensionPoints) {
+		invalidate();
+	}
+
+	@Override
+	public void removed(IExtensionPoint[] extensionPoints) {
+		invalidate();
+	}
+
+	private void invalidateLocked() {
+		++generation;
+		extensions = null;
+		composedDesigners.clear();
+	}
+
+	private List<DesignerExtension<T>> getExtensionsLocked() {
+		List<DesignerExtension<T>> result = extensions;
+		if (result != null) {
+			return result;
+		}
+		IConfigurationElement[] configelements = Platform.getExtensionRegistry()
+				.getConfigurationElementsFor(extensionPointId);
+		result = new ArrayList<>(configelements.length);
+		for (IConfigurationElement configelem : configelements) {
+			IExtension extension = configelem.getDeclaringExtension();
+			if (extension.getUniqueIdentifier() != null
+					&& ExtensionDisablement.isDisabled(extensionDisablements, extension)) {
+				continue;
+			}
+			try {
+				Object contributor = configelem.createExecutableExtension("class");
+				if (!designerType.isInstance(contributor)) {
+					throw new ClassCastException("Extension " + EclipseSakerIDEPlugin.getExtensionName(extension)
+							+ " doesn't implement " + designerType.getName() + ". (" + extensionPointId + ")");
+				}
+				result.add(new DesignerExtension<>(configelem.getAttribute("schema_id"),
+						designerType.cast(contributor)));
+			} catch (Exception e) {
+				//the failed extension is not retried until the registry is invalidated
+				plugin.displayException(SakerLog.SEVERITY_ERROR,
+						"Failed to intialize script designer extension: " + configelem.getName() + " ("
+								+ extensionPointId + ")",
+						e);
+				continue;
+			}
+		}
+		extensions = result;
+		return result;
+	}
+
+	private static final class DesignerExtension<T> {
+		protected final String schemaId;
+		protected final T designer;
+
+		public DesignerExtension(String schemaId, T designer) {
+			this.schemaId = schemaId;
+			this.designer = designer;
+		}
+	}
+}
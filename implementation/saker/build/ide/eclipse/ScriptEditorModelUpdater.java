@@ -0,0 +1,286 @@
+/*
+ * Copyright (C) 2020 Bence Sipka
+ *
+ * This program is free software: you can redistribute it and/or modify 
+ * it under the terms of the GNU General Public License as published by 
+ * the Free Software Foundation, version 3.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package saker.build.ide.eclipse;
+
+import java.io.Closeable;
+import java.util.ArrayDeque;
+import java.util.Collections;
+import java.util.List;
+
+import saker.build.ide.support.ui.ScriptEditorModel;
+import saker.build.ide.support.ui.ScriptEditorModel.TokenState;
+import saker.build.runtime.execution.SakerLog;
+import saker.build.scripting.model.ScriptSyntaxModel;
+import saker.build.scripting.model.TextRegionChange;
+import saker.build.thirdparty.saker.util.ObjectUtils;
+
+/**
+ * Forwards the text changes of an editor to the {@link ScriptEditorModel} on a background thread.
+ * <p>
+ * The text changes are put in a bounded queue, and adjacent changes (e.g. typing, or deleting characters one after
+ * the other) are merged into a single change before they are applied. A single worker thread applies the queued
+ * changes to the editor model, which in turn updates the underlying {@link ScriptSyntaxModel}.
+ * <p>
+ * When the model is updated, a {@link Snapshot} is published that can be used to access the latest model
+ * and token states without waiting for the model update.
+ */
+public class ScriptEditorModelUpdater implements Closeable {
+	private static final int QUEUE_CAPACITY = 64;
+
+	public static final class Snapshot {
+		private final ScriptSyntaxModel model;
+		private final List<TokenState> tokenStates;
+
+		Snapshot(ScriptSyntaxModel model, List<TokenState> tokenStates) {
+			this.model = model;
+			this.tokenStates = tokenStates;
+		}
+
+		public ScriptSyntaxModel getModel() {
+			return model;
+		}
+
+		public List<TokenState> getTokenStates() {
+			return tokenStates;
+		}
+	}
+
+	private final ScriptEditorModel editorModel;
+
+	private final Object queueLock = new Object();
+	private final ArrayDeque<TextRegionChange> queue = new ArrayDeque<>();
+	/**
+	 * Lock that is held while changes are applied to the editor model, so they're applied in order.
+	 */
+	private final Object applyLock = new Object();
+
+	private volatile Snapshot snapshot;
+
+	private Thread worker;
+	private boolean closed = false;
+
+	public ScriptEditorModelUpdater(ScriptEditorModel editorModel) {
+		this.editorModel = editorModel;
+	}
+
+	/**
+	 * Enqueues a text change to be applied to the editor model.
+	 * <p>
+	 * If the queue is full, the queued changes are applied on the caller thread.
+	 */
+	public void textChange(TextRegionChange change) {
+		boolean full;
+		synchronized (queueLock) {
+			if (closed) {
+				return;
+			}
+			TextRegionChange last = queue.peekLast();
+			TextRegionChange merged = last == null ? null : merge(last, change);
+			if (merged != null) {
+				queue.pollLast();
+				queue.addLast(merged);
+			} else {
+				queue.addLast(change);
+			}
+			full = queue.size() >= QUEUE_CAPACITY;
+			if (!full) {
+				startWorkerLocked();
+				queueLock.notify();
+			}
+		}
+		if (full) {
+			flush();
+		}
+	}
+
+	/**
+	 * Discards the queued changes and resets the input of the editor model.
+	 */
+	public void resetInput(String text) {
+		synchronized (applyLock) {
+			synchronized (queueLock) {
+				queue.clear();
+			}
+			editorModel.resetInput(text);
+		}
+		publishSnapshot(null);
+	}
+
+	/**
+	 * Applies all queued changes to the editor model on the caller thread.
+	 */
+	public void flush() {
+		synchronized (applyLock) {
+			while (true) {
+				TextRegionChange change;
+				synchronized (queueLock) {
+					change = queue.pollFirst();
+				}
+				if (change == null) {
+					return;
+				}
+				try {
+					editorModel.textChange(change);
+				} catch (RuntimeException e) {
+					ImplActivator.getDefault().displayException(SakerLog.SEVERITY_WARNING,
+							"Failed to apply script text change.", e);
+				}
+			}
+		}
+	}
+
+	/**
+	 * Gets the up to date model after applying all pending changes.
+	 *
+	 * @see ScriptEditorModel#getUpToDateModel()
+	 */
+	public ScriptSyntaxModel getUpToDateModel() throws InterruptedException {
+		flush();
+		return editorModel.getUpToDateModel();
+	}
+
+	/**
+	 * Publishes a new snapshot for the current state of the editor model.
+	 * <p>
+	 * Should be called when the editor model notifies its listeners about an update.
+	 *
+	 * @param model
+	 *            The updated model. May be <code>null</code>.
+	 * @return The published snapshot.
+	 */
+	public Snapshot publishSnapshot(ScriptSyntaxModel model) {
+		List<TokenState> tokenstates = editorModel.getCurrentTokenState();
+		if (tokenstates == null) {
+			tokenstates = Collections.emptyList();
+		}
+		Snapshot result = new Snapshot(model, tokenstates);
+		this.snapshot = result;
+		return result;
+	}
+
+	/**
+	 * Gets the latest published snapshot without waiting for pending model updates.
+	 *
+	 * @return The snapshot or <code>null</code> if none was published yet.
+	 */
+	public Snapshot getSnapshot() {
+		return snapshot;
+	}
+
+	/**
+	 * Discards the queued changes and waits for the worker thread to exit.
+	 * <p>
+	 * The editor model can be closed after this method returns, as no more changes are applied to it.
+	 */
+	@Override
+	public void close() {
+		Thread w;
+		synchronized (queueLock) {
+			closed = true;
+			queue.clear();
+			queueLock.notifyAll();
+			w = worker;
+			worker = null;
+		}
+		if (w == null || w == Thread.currentThread()) {
+			return;
+		}
+		//the worker exits after the change that it is currently applying
+		boolean interrupted = false;
+		while (true) {
+			try {
+				w.join();
+				break;
+			} catch (InterruptedException e) {
+				interrupted = true;
+			}
+		}
+		if (interrupted) {
+			Thread.currentThread().interrupt();
+		}
+	}
+
+	private void startWorkerLocked() {
+		if (worker != null) {
+			return;
+		}
+		Thread t = new Thread(this::runWorker, "Script model updater");
+		t.setDaemon(true);
+		worker = t;
+		t.start();
+	}
+
+	private void runWorker() {
+		while (true) {
+			synchronized (queueLock) {
+				while (queue.isEmpty()) {
+					if (closed) {
+						return;
+					}
+					try {
+						queueLock.wait();
+					} catch (InterruptedException e) {
+						if (closed) {
+							return;
+						}
+					}
+				}
+				if (closed) {
+					return;
+				}
+			}
+			flush();
+		}
+	}
+
+	/**
+	 * Merges two consecutive text changes if the second one touches the region that the first one inserted.
+	 *
+	 * @param first
+	 *            The first change.
+	 * @param second
+	 *            The change that was applied after the first, in the coordinates of the document modified by the first
+	 *            change.
+	 * @return The merged change, or <code>null</code> if the changes are not adjacent.
+	 */
+	static TextRegionChange merge(TextRegionChange first, TextRegionChange second) {
+		int firstoffset = first.getOffset();
+		String firsttext = ObjectUtils.nullDefault(first.getText(), "");
+		int firstinsertend = firstoffset + firsttext.length();
+
+		int secondstart = second.getOffset();
+		int secondend = secondstart + second.getLength();
+		if (secondend < firstoffset || secondstart > firstinsertend) {
+			return null;
+		}
+		String secondtext = ObjectUtils.nullDefault(second.getText(), "");
+
+		int noffset = Math.min(secondstart, firstoffset);
+		//the part of the second change after the inserted text of the first refers to the original document
+		int noriginalend = Math.max(firstoffset + first.getLength(),
+				secondend - firsttext.length() + first.getLength());
+		StringBuilder sb = new StringBuilder();
+		if (secondstart > firstoffset) {
+			sb.append(firsttext, 0, secondstart - firstoffset);
+		}
+		sb.append(secondtext);
+		if (secondend < firstinsertend) {
+			sb.append(firsttext, secondend - firstoffset, firsttext.length());
+		}
+		return new TextRegionChange(noffset, noriginalend - noffset, sb.toString());
+	}
+
+}
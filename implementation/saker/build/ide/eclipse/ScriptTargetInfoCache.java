@@ -0,0 +1,560 @@
+/*
+ * Copyright (C) 2020 Bence Sipka
+ *
+ * This program is free software: you can redistribute it and/or modify 
+ * it under the terms of the GNU General Public License as published by 
+ * the Free Software Foundation, version 3.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package saker.build.ide.eclipse;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.UUID;
+
+import saker.build.file.path.SakerPath;
+import saker.build.scripting.model.FormattedTextContent;
+import saker.build.scripting.model.info.BuildTargetInformation;
+import saker.build.scripting.model.info.BuildTargetParameterInformation;
+
+/**
+ * On-disk cache of the build target informations of the scripts in a project.
+ * <p>
+ * The entries are keyed by the content hash of the script files and by a key that represents the scripting
+ * configuration of the project. If the scripting configuration changes, all entries are discarded. This allows the
+ * targets of the scripts to be displayed without parsing them after the IDE is restarted.
+ */
+public final class ScriptTargetInfoCache {
+	private static final String CACHE_FILE_NAME = "script_targets.cache";
+	private static final int CACHE_FILE_MAGIC = 0x5343_5447;
+	private static final int CACHE_FILE_VERSION = 1;
+	private static final String HASH_ALGORITHM = "SHA-256";
+
+	/**
+	 * The state of a script file that was read when the cache was looked up.
+	 * <p>
+	 * The same lookup should be used to put the parsed targets in the cache, so the targets are associated with the
+	 * contents of the script that was present <i>before</i> it was parsed.
+	 */
+	public static final class Lookup {
+		protected final SakerPath scriptPath;
+		protected final String configurationKey;
+		protected final long size;
+		protected final long lastModified;
+		protected final byte[] contentHash;
+		protected final List<CachedBuildTargetInformation> targets;
+
+		Lookup(SakerPath scriptPath, String configurationKey, long size, long lastModified, byte[] contentHash,
+				List<CachedBuildTargetInformation> targets) {
+			this.scriptPath = scriptPath;
+			this.configurationKey = configurationKey;
+			this.size = size;
+			this.lastModified = lastModified;
+			this.contentHash = contentHash;
+			this.targets = targets;
+		}
+
+		/**
+		 * @return The cached targets, or <code>null</code> if the script is not present in the cache with the same
+		 *             contents.
+		 */
+		public Collection<? extends BuildTargetInformation> getTargets() {
+			return targets;
+		}
+	}
+
+	private static final class Entry {
+		protected long size;
+		protected long lastModified;
+		protected final byte[] contentHash;
+		protected final List<CachedBuildTargetInformation> targets;
+
+		public Entry(long size, long lastModified, byte[] contentHash, List<CachedBuildTargetInformation> targets) {
+			this.size = size;
+			this.lastModified = lastModified;
+			this.contentHash = contentHash;
+			this.targets = targets;
+		}
+	}
+
+	private final Path cacheFilePath;
+
+	private final Object lock = new Object();
+	/**
+	 * Lock that is held while the cache file is written, so the writes are not interleaved.
+	 */
+	private final Object writeLock = new Object();
+	private boolean loaded = false;
+	/**
+	 * Whether the entries have been modified since the cache file was last written.
+	 */
+	private boolean dirty = false;
+	private String configurationKey;
+	private final Map<SakerPath, Entry> entries = new HashMap<>();
+
+	public ScriptTargetInfoCache(Path directory) {
+		this.cacheFilePath = directory.resolve(CACHE_FILE_NAME);
+	}
+
+	/**
+	 * Looks up the targets of a script.
+	 * <p>
+	 * The content hash of the file is only computed if its size or modification time differs from the cached one.
+	 * 
+	 * @param scriptpath
+	 *            The execution path of the script.
+	 * @param localpath
+	 *            The local file system path of the script.
+	 * @param configurationkey
+	 *            The key of the current scripting configuration.
+	 * @return The lookup.
+	 * @throws IOException
+	 *             If the script file cannot be read.
+	 */
+	public Lookup lookup(SakerPath scriptpath, Path localpath, String configurationkey) throws IOException {
+		BasicFileAttributes attrs = Files.readAttributes(localpath, BasicFileAttributes.class);
+		long size = attrs.size();
+		long lastmodified = attrs.lastModifiedTime().toMillis();
+		synchronized (lock) {
+			ensureLoadedLocked();
+			if (configurationkey.equals(this.configurationKey)) {
+				Entry entry = entries.get(scriptpath);
+				if (entry != null && entry.size == size && entry.lastModified == lastmodified) {
+					return new Lookup(scriptpath, configurationkey, size, lastmodified, entry.contentHash,
+							entry.targets);
+				}
+			}
+		}
+		byte[] hash = hashFile(localpath);
+		synchronized (lock) {
+			if (configurationkey.equals(this.configurationKey)) {
+				Entry entry = entries.get(scriptpath);
+				if (entry != null && Arrays.equals(entry.contentHash, hash)) {
+					//the contents are the same, only the modification time changed
+					//the new attributes are persisted on the next write
+					entry.size = size;
+					entry.lastModified = lastmodified;
+					dirty = true;
+					return new Lookup(scriptpath, configurationkey, size, lastmodified, hash, entry.targets);
+				}
+			}
+		}
+		return new Lookup(scriptpath, configurationkey, size, lastmodified, hash, null);
+	}
+
+	/**
+	 * Gets the cached targets of a script without checking if the script file has been modified.
+	 * 
+	 * @return The targets or <code>null</code> if not found.
+	 */
+	public Collection<? extends BuildTargetInformation> getUnchecked(SakerPath scriptpath, String configurationkey) {
+		synchronized (lock) {
+			ensureLoadedLocked();
+			if (!configurationkey.equals(this.configurationKey)) {
+				return null;
+			}
+			Entry entry = entries.get(scriptpath);
+			if (entry == null) {
+				return null;
+			}
+			return entry.targets;
+		}
+	}
+
+	/**
+	 * Puts the parsed targets of a script in the cache.
+	 * <p>
+	 * If the scripting configuration of the lookup differs from the cached one, the other entries are discarded.
+	 * <p>
+	 * The cache file is not written by this method, but when {@link #flush()} is called.
+	 * 
+	 * @param lookup
+	 *            The lookup that was performed before the script was parsed.
+	 * @param targets
+	 *            The parsed targets.
+	 * @return The cached targets.
+	 */
+	public Collection<? extends BuildTargetInformation> put(Lookup lookup,
+			Collection<? extends BuildTargetInformation> targets) {
+		List<CachedBuildTargetInformation> cachedtargets = toCachedTargets(targets);
+		synchronized (lock) {
+			ensureLoadedLocked();
+			if (!lookup.configurationKey.equals(this.configurationKey)) {
+				entries.clear();
+				this.configurationKey = lookup.configurationKey;
+			}
+			entries.put(lookup.scriptPath,
+					new Entry(lookup.size, lookup.lastModified, lookup.contentHash, cachedtargets));
+			dirty = true;
+		}
+		return cachedtargets;
+	}
+
+	/**
+	 * Removes the entries of the scripts that are not present in the argument set.
+	 * <p>
+	 * The cache file is not written by this method, but when {@link #flush()} is called.
+	 */
+	public void retainScripts(Set<SakerPath> scriptpaths) {
+		synchronized (lock) {
+			ensureLoadedLocked();
+			if (entries.keySet().retainAll(scriptpaths)) {
+				dirty = true;
+			}
+		}
+	}
+
+	/**
+	 * Writes the cache file if the entries have been modified since the last write.
+	 * <p>
+	 * The entries are copied, and the file is written without blocking the lookups.
+	 * 
+	 * @throws IOException
+	 *             If the cache file cannot be written.
+	 */
+	public void flush() throws IOException {
+		synchronized (writeLock) {
+			String configkey;
+			Map<SakerPath, Entry> entriescopy = new HashMap<>();
+			synchronized (lock) {
+				if (!dirty || configurationKey == null) {
+					return;
+				}
+				dirty = false;
+				configkey = configurationKey;
+				for (Map.Entry<SakerPath, Entry> mapentry : entries.entrySet()) {
+					Entry entry = mapentry.getValue();
+					//copy, as the attributes of the entries may be modified
+					entriescopy.put(mapentry.getKey(),
+							new Entry(entry.size, entry.lastModified, entry.contentHash, entry.targets));
+				}
+			}
+			try {
+				write(configkey, entriescopy);
+			} catch (IOException | RuntimeException e) {
+				synchronized (lock) {
+					dirty = true;
+				}
+				throw e;
+			}
+		}
+	}
+
+	private void ensureLoadedLocked() {
+		if (loaded) {
+			return;
+		}
+		loaded = true;
+		try (DataInputStream in = new DataInputStream(new BufferedInputStream(Files.newInputStream(cacheFilePath)))) {
+			if (in.readInt() != CACHE_FILE_MAGIC || in.readInt() != CACHE_FILE_VERSION) {
+				return;
+			}
+			String configkey = in.readUTF();
+			Map<SakerPath, Entry> readentries = new HashMap<>();
+			for (int count = in.readInt(); count > 0; --count) {
+				SakerPath path = SakerPath.valueOf(in.readUTF());
+				long size = in.readLong();
+				long lastmodified = in.readLong();
+				byte[] hash = new byte[in.readUnsignedByte()];
+				in.readFully(hash);
+				List<CachedBuildTargetInformation> targets = new ArrayList<>();
+				for (int targetcount = in.readInt(); targetcount > 0; --targetcount) {
+					targets.add(readTarget(in));
+				}
+				readentries.put(path, new Entry(size, lastmodified, hash, Collections.unmodifiableList(targets)));
+			}
+			this.configurationKey = configkey;
+			this.entries.putAll(readentries);
+		} catch (NoSuchFileException e) {
+		} catch (IOException | RuntimeException e) {
+			//the cache is corrupt or incompatible, start with an empty one
+			this.entries.clear();
+		}
+	}
+
+	private void write(String configkey, Map<SakerPath, Entry> entries) throws IOException {
+		Path tempfilepath = cacheFilePath
+				.resolveSibling(cacheFilePath.getFileName() + "." + UUID.randomUUID() + ".temp");
+		try {
+			try (DataOutputStream out = new DataOutputStream(
+					new BufferedOutputStream(Files.newOutputStream(tempfilepath)))) {
+				out.writeInt(CACHE_FILE_MAGIC);
+				out.writeInt(CACHE_FILE_VERSION);
+				out.writeUTF(configkey);
+				out.writeInt(entries.size());
+				for (Map.Entry<SakerPath, Entry> mapentry : entries.entrySet()) {
+					Entry entry = mapentry.getValue();
+					out.writeUTF(mapentry.getKey().toString());
+					out.writeLong(entry.size);
+					out.writeLong(entry.lastModified);
+					out.writeByte(entry.contentHash.length);
+					out.write(entry.contentHash);
+					out.writeInt(entry.targets.size());
+					for (CachedBuildTargetInformation target : entry.targets) {
+						writeTarget(out, target);
+					}
+				}
+			}
+			Files.move(tempfilepath, cacheFilePath, StandardCopyOption.REPLACE_EXISTING);
+		} finally {
+			Files.deleteIfExists(tempfilepath);
+		}
+	}
+
+	private static byte[] hashFile(Path path) throws IOException {
+		MessageDigest digest;
+		try {
+			digest = MessageDigest.getInstance(HASH_ALGORITHM);
+		} catch (NoSuchAlgorithmException e) {
+			throw new IOException("Hash algorithm not found: " + HASH_ALGORITHM, e);
+		}
+		byte[] buffer = new byte[8192];
+		try (InputStream in = Files.newInputStream(path)) {
+			for (int read; (read = in.read(buffer)) > 0;) {
+				digest.update(buffer, 0, read);
+			}
+		}
+		return digest.digest();
+	}
+
+	private static List<CachedBuildTargetInformation> toCachedTargets(
+			Collection<? extends BuildTargetInformation> targets) {
+		if (targets == null || targets.isEmpty()) {
+			return Collections.emptyList();
+		}
+		List<CachedBuildTargetInformation> result = new ArrayList<>(targets.size());
+		for (BuildTargetInformation target : targets) {
+			String targetname = target.getTargetName();
+			if (targetname == null) {
+				continue;
+			}
+			List<CachedBuildTargetParameterInformation> params = new ArrayList<>();
+			Collection<? extends BuildTargetParameterInformation> targetparams = target.getParameters();
+			if (targetparams != null) {
+				for (BuildTargetParameterInformation param : targetparams) {
+					String paramname = param.getParameterName();
+					if (paramname == null) {
+						continue;
+					}
+					params.add(new CachedBuildTargetParameterInformation(paramname, param.getType(),
+							toCachedText(param.getInformation())));
+				}
+			}
+			result.add(new CachedBuildTargetInformation(targetname, Collections.unmodifiableList(params),
+					toCachedText(target.getInformation())));
+		}
+		return Collections.unmodifiableList(result);
+	}
+
+	private static CachedFormattedTextContent toCachedText(FormattedTextContent content) {
+		if (content == null) {
+			return null;
+		}
+		Set<String> formats = content.getAvailableFormats();
+		if (formats == null || formats.isEmpty()) {
+			return null;
+		}
+		Map<String, String> texts = new TreeMap<>();
+		for (String format : formats) {
+			String text = content.getFormattedText(format);
+			if (text != null) {
+				texts.put(format, text);
+			}
+		}
+		if (texts.isEmpty()) {
+			return null;
+		}
+		return new CachedFormattedTextContent(texts);
+	}
+
+	private static void writeTarget(DataOutputStream out, CachedBuildTargetInformation target) throws IOException {
+		out.writeUTF(target.targetName);
+		writeText(out, target.information);
+		out.writeInt(target.parameters.size());
+		for (CachedBuildTargetParameterInformation param : target.parameters) {
+			out.writeUTF(param.parameterName);
+			writeNullableString(out, param.type);
+			writeText(out, param.information);
+		}
+	}
+
+	private static CachedBuildTargetInformation readTarget(DataInputStream in) throws IOException {
+		String targetname = in.readUTF();
+		CachedFormattedTextContent information = readText(in);
+		List<CachedBuildTargetParameterInformation> params = new ArrayList<>();
+		for (int count = in.readInt(); count > 0; --count) {
+			String paramname = in.readUTF();
+			String type = readNullableString(in);
+			params.add(new CachedBuildTargetParameterInformation(paramname, type, readText(in)));
+		}
+		return new CachedBuildTargetInformation(targetname, Collections.unmodifiableList(params), information);
+	}
+
+	private static void writeText(DataOutputStream out, CachedFormattedTextContent text) throws IOException {
+		if (text == null) {
+			out.writeInt(0);
+			return;
+		}
+		out.writeInt(text.texts.size());
+		for (Map.Entry<String, String> entry : text.texts.entrySet()) {
+			out.writeUTF(entry.getKey());
+			writeLongString(out, entry.getValue());
+		}
+	}
+
+	private static CachedFormattedTextContent readText(DataInputStream in) throws IOException {
+		int count = in.readInt();
+		if (count == 0) {
+			return null;
+		}
+		Map<String, String> texts = new TreeMap<>();
+		for (; count > 0; --count) {
+			String format = in.readUTF();
+			texts.put(format, readLongString(in));
+		}
+		return new CachedFormattedTextContent(texts);
+	}
+
+	private static void writeNullableString(DataOutputStream out, String s) throws IOException {
+		out.writeBoolean(s != null);
+		if (s != null) {
+			out.writeUTF(s);
+		}
+	}
+
+	private static String readNullableString(DataInputStream in) throws IOException {
+		if (!in.readBoolean()) {
+			return null;
+		}
+		return in.readUTF();
+	}
+
+	/**
+	 * Writes a string that may be longer than the limit of {@link DataOutputStream#writeUTF(String)}.
+	 */
+	private static void writeLongString(DataOutputStream out, String s) throws IOException {
+		byte[] bytes = s.getBytes(StandardCharsets.UTF_8);
+		out.writeInt(bytes.length);
+		out.write(bytes);
+	}
+
+	private static String readLongString(DataInputStream in) throws IOException {
+		byte[] bytes = new byte[in.readInt()];
+		in.readFully(bytes);
+		return new String(bytes, StandardCharsets.UTF_8);
+	}
+
+	private static final class CachedFormattedTextContent implements FormattedTextContent {
+		protected final Map<String, String> texts;
+
+		public CachedFormattedTextContent(Map<String, String> texts) {
+			this.texts = texts;
+		}
+
+		@Override
+		public Set<String> getAvailableFormats() {
+			return Collections.unmodifiableSet(texts.keySet());
+		}
+
+		@Override
+		public String getFormattedText(String format) {
+			return texts.get(format);
+		}
+	}
+
+	private static final class CachedBuildTargetParameterInformation implements BuildTargetParameterInformation {
+		protected final String parameterName;
+		protected final String type;
+		protected final CachedFormattedTextContent information;
+
+		public CachedBuildTargetParameterInformation(String parameterName, String type,
+				CachedFormattedTextContent information) {
+			this.parameterName = parameterName;
+			this.type = type;
+			this.information = information;
+		}
+
+		@Override
+		public String getParameterName() {
+			return parameterName;
+		}
+
+		@Override
+		public String getType() {
+			return type;
+		}
+
+		@Override
+		public FormattedTextContent getInformation() {
+			return information;
+		}
+
+		@Override
+		public String toString() {
+			return getClass().getSimpleName() + "[" + parameterName + " : " + type + "]";
+		}
+	}
+
+	private static final class CachedBuildTargetInformation implements BuildTargetInformation {
+		protected final String targetName;
+		protected final List<CachedBuildTargetParameterInformation> parameters;
+		protected final CachedFormattedTextContent information;
+
+		public CachedBuildTargetInformation(String targetName, List<CachedBuildTargetParameterInformation> parameters,
+				CachedFormattedTextContent information) {
+			Objects.requireNonNull(targetName, "target name");
+			this.targetName = targetName;
+			this.parameters = parameters;
+			this.information = information;
+		}
+
+		@Override
+		public String getTargetName() {
+			return targetName;
+		}
+
+		@Override
+		public Collection<? extends BuildTargetParameterInformation> getParameters() {
+			return parameters;
+		}
+
+		@Override
+		public FormattedTextContent getInformation() {
+			return information;
+		}
+
+		@Override
+		public String toString() {
+			return getClass().getSimpleName() + "[" + targetName + "]";
+		}
+	}
+}
@@ -0,0 +1,294 @@
+/*
+ * Copyright (C) 2020 Bence Sipka
+ *
+ * This program is free software: you can redistribute it and/or modify 
+ * it under the terms of the GNU General Public License as published by 
+ * the Free Software Foundation, version 3.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package saker.build.ide.eclipse;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.ArrayDeque;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
+
+import org.eclipse.core.runtime.IProgressMonitor;
+import org.eclipse.core.runtime.IStatus;
+import org.eclipse.core.runtime.Status;
+import org.eclipse.core.runtime.jobs.Job;
+
+import saker.build.file.path.SakerPath;
+import saker.build.runtime.execution.SakerLog;
+import saker.build.scripting.model.info.BuildTargetInformation;
+
+/**
+ * Loads the build targets of the scripts of a project in the background.
+ * <p>
+ * The scripts are parsed by a bounded number of low priority jobs. The results are kept in memory, so the targets
+ * menu can display them without parsing the scripts on the UI thread. A result is reloaded if the size or
+ * modification time of the script file changes.
+ */
+public final class ScriptTargetsLoader {
+	/**
+	 * The maximum number of scripts that are parsed concurrently.
+	 * <p>
+	 * Can be set using the <code>saker.build.ide.eclipse.script.targets.load.threads</code> system property.
+	 */
+	private static final int MAX_LOADER_JOBS = Math.max(1,
+			Integer.getInteger(Activator.PLUGIN_ID + ".script.targets.load.threads",
+					Math.min(4, Math.max(1, Runtime.getRuntime().availableProcessors() / 2))));
+
+	public static final class Result {
+		protected final Collection<? extends BuildTargetInformation> targets;
+		protected final Exception exception;
+		protected final FileStamp stamp;
+
+		Result(Collection<? extends BuildTargetInformation> targets, Exception exception, FileStamp stamp) {
+			this.targets = targets;
+			this.exception = exception;
+			this.stamp = stamp;
+		}
+
+		/**
+		 * @return The targets or <code>null</code> if the script is not part of the scripting configuration, or
+		 *             failed to load.
+		 */
+		public Collection<? extends BuildTargetInformation> getTargets() {
+			return targets;
+		}
+
+		/**
+		 * @return The exception that occurred when the targets were loaded, or <code>null</code> if none.
+		 */
+		public Exception getException() {
+			return exception;
+		}
+	}
+
+	private static final class FileStamp {
+		protected final long size;
+		protected final long lastModified;
+
+		public FileStamp(long size, long lastModified) {
+			this.size = size;
+			this.lastModified = lastModified;
+		}
+
+		public static FileStamp read(Path path) {
+			if (path == null) {
+				return null;
+			}
+			try {
+				BasicFileAttributes attrs = Files.readAttributes(path, BasicFileAttributes.class);
+				return new FileStamp(attrs.size(), attrs.lastModifiedTime().toMillis());
+			} catch (IOException e) {
+				return null;
+			}
+		}
+
+		@Override
+		public int hashCode() {
+			return Long.hashCode(lastModified);
+		}
+
+		@Override
+		public boolean equals(Object obj) {
+			if (this == obj)
+				return true;
+			if (obj == null)
+				return false;
+			if (getClass() != obj.getClass())
+				return false;
+			FileStamp other = (FileStamp) obj;
+			if (lastModified != other.lastModified)
+				return false;
+			if (size != other.size)
+				return false;
+			return true;
+		}
+	}
+
+	private final class LoaderJob extends Job {
+		public LoaderJob() {
+			super("Loading build targets of " + project.getProject().getName());
+			setPriority(Job.DECORATE);
+			setSystem(true);
+		}
+
+		@Override
+		protected IStatus run(IProgressMonitor monitor) {
+			try {
+				while (!monitor.isCanceled()) {
+					SakerPath scriptpath;
+					int loadgeneration;
+					synchronized (lock) {
+						scriptpath = queue.pollFirst();
+						if (scriptpath == null || closed) {
+							return Status.OK_STATUS;
+						}
+						loadgeneration = generation;
+					}
+					Result result = load(scriptpath);
+					synchronized (lock) {
+						pending.remove(scriptpath);
+						if (loadgeneration == generation) {
+							results.put(scriptpath, result);
+						} else {
+							//the results were invalidated while loading, load it again with the new configuration
+							enqueueLocked(scriptpath);
+						}
+					}
+				}
+				return Status.CANCEL_STATUS;
+			} finally {
+				boolean finished;
+				synchronized (lock) {
+					--jobCount;
+					if (!queue.isEmpty()) {
+						//items were added while this job was finishing
+						startJobsLocked();
+					}
+					finished = jobCount == 0 && !closed;
+				}
+				if (finished) {
+					pruneCache();
+				}
+			}
+		}
+	}
+
+	private final EclipseSakerIDEProject project;
+
+	private final Object lock = new Object();
+	private final Map<SakerPath, Result> results = new HashMap<>();
+	/**
+	 * The scripts that are queued or being loaded.
+	 */
+	private final Set<SakerPath> pending = new HashSet<>();
+	private final ArrayDeque<SakerPath> queue = new ArrayDeque<>();
+	private int jobCount;
+	/**
+	 * Incremented when the results are invalidated, so the results of the loads that were started before are
+	 * discarded.
+	 */
+	private int generation;
+	private boolean closed;
+
+	public ScriptTargetsLoader(EclipseSakerIDEProject project) {
+		this.project = project;
+	}
+
+	/**
+	 * Gets the loaded build targets of the script.
+	 * <p>
+	 * If the script hasn't been loaded yet, or it has been modified since, the script is scheduled to be loaded, and
+	 * <code>null</code> is returned.
+	 * 
+	 * @param scriptpath
+	 *            The execution path of the script.
+	 * @return The result or <code>null</code> if the script is being loaded.
+	 */
+	public Result getResult(SakerPath scriptpath) {
+		FileStamp stamp = FileStamp.read(project.getScriptLocalPath(scriptpath));
+		synchronized (lock) {
+			Result result = results.get(scriptpath);
+			if (result != null && (result.stamp == null ? stamp == null : result.stamp.equals(stamp))) {
+				return result;
+			}
+			enqueueLocked(scriptpath);
+			return null;
+		}
+	}
+
+	/**
+	 * Schedules the loading of the argument scripts in the background.
+	 */
+	public void loadAll(Collection<SakerPath> scriptpaths) {
+		synchronized (lock) {
+			for (SakerPath scriptpath : scriptpaths) {
+				enqueueLocked(scriptpath);
+			}
+		}
+	}
+
+	/**
+	 * Discards the loaded results, e.g. when the scripting configuration changes.
+	 */
+	public void invalidate() {
+		synchronized (lock) {
+			++generation;
+			results.clear();
+		}
+	}
+
+	public void close() {
+		synchronized (lock) {
+			closed = true;
+			queue.clear();
+			pending.clear();
+			results.clear();
+		}
+	}
+
+	private Result load(SakerPath scriptpath) {
+		//read the stamp before parsing, so a concurrent modification causes the script to be reloaded
+		FileStamp stamp = FileStamp.read(project.getScriptLocalPath(scriptpath));
+		try {
+			return new Result(project.getScriptBuildTargetInfos(scriptpath), null, stamp);
+		} catch (RuntimeException e) {
+			project.displayException(SakerLog.SEVERITY_WARNING,
+					"Failed to load build targets of script: " + scriptpath, e);
+			return new Result(null, e, stamp);
+		} catch (Exception e) {
+			//the exception is displayed in the menu
+			return new Result(null, e, stamp);
+		}
+	}
+
+	/**
+	 * Removes the scripts from the on-disk cache that are no longer tracked by the project, and writes the cache
+	 * file.
+	 */
+	private void pruneCache() {
+		ScriptTargetInfoCache cache = project.getScriptTargetInfoCache();
+		if (cache == null) {
+			return;
+		}
+		cache.retainScripts(project.getTrackedScriptPaths());
+		try {
+			cache.flush();
+		} catch (IOException e) {
+			project.displayException(SakerLog.SEVERITY_WARNING,
+					"Failed to write script target cache for project: " + project.getProject().getName(), e);
+		}
+	}
+
+	private void enqueueLocked(SakerPath scriptpath) {
+		if (closed || !pending.add(scriptpath)) {
+			return;
+		}
+		queue.addLast(scriptpath);
+		startJobsLocked();
+	}
+
+	private void startJobsLocked() {
+		while (jobCount < MAX_LOADER_JOBS && jobCount < queue.size()) {
+			++jobCount;
+			new LoaderJob().schedule();
+		}
+	}
+}
@@ -15,7 +15,6 @@
  */
 package saker.build.ide.eclipse;
 
-import java.io.IOException;
 import java.util.ArrayList;
 import java.util.Collection;
 import java.util.Collections;
@@ -225,10 +224,18 @@ public class TargetsMenuContribution extends ContributionItem {
 
 	private static Collection<? extends BuildTargetInformation> appendTargetsToBuildFileMenu(IMenuManager manager,
 			EclipseSakerIDEProject sakereclipseproject, SakerPath buildfilepath) {
-		Collection<? extends BuildTargetInformation> scripttargets;
-		try {
-			scripttargets = sakereclipseproject.getScriptBuildTargetInfos(buildfilepath);
-		} catch (ScriptParsingFailedException e) {
+		//don't parse the script on the UI thread, only display the targets that are loaded in the background
+		ScriptTargetsLoader.Result loadresult = sakereclipseproject.getLoadedScriptBuildTargetInfos(buildfilepath);
+		if (loadresult == null) {
+			BaseAction dummy = new BaseAction("Loading targets...");
+			dummy.setEnabled(false);
+			manager.add(dummy);
+			return null;
+		}
+		Collection<? extends BuildTargetInformation> scripttargets = loadresult.getTargets();
+		Exception loadexception = loadresult.getException();
+		if (loadexception instanceof ScriptParsingFailedException) {
+			ScriptParsingFailedException e = (ScriptParsingFailedException) loadexception;
 			SakerPath fileprojectpath = sakereclipseproject.executionPathToProjectRelativePath(buildfilepath);
 			if (fileprojectpath != null) {
 				manager.add(new Action("Failed to parse script file") {
@@ -252,7 +259,8 @@ public class TargetsMenuContribution extends ContributionItem {
 				manager.add(dummy);
 			}
 			return null;
-		} catch (IOException e) {
+		}
+		if (loadexception != null) {
 			BaseAction dummy = new BaseAction("Failed to open script file");
 			dummy.setEnabled(false);
 			manager.add(dummy);
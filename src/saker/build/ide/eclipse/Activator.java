@@ -18,28 +18,41 @@ package saker.build.ide.eclipse;
 import java.io.File;
 import java.io.IOException;
 import java.io.InputStream;
+import java.io.OutputStream;
 import java.lang.reflect.Constructor;
 import java.lang.reflect.InvocationTargetException;
 import java.lang.reflect.Method;
 import java.net.URL;
 import java.net.URLConnection;
+import java.nio.file.AtomicMoveNotSupportedException;
 import java.nio.file.Files;
 import java.nio.file.Path;
 import java.nio.file.Paths;
 import java.nio.file.StandardCopyOption;
+import java.nio.file.attribute.BasicFileAttributes;
 import java.nio.file.attribute.FileTime;
+import java.security.DigestInputStream;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
 import java.util.Arrays;
+import java.util.Properties;
+import java.util.UUID;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.FutureTask;
 import java.util.jar.JarFile;
 import java.util.zip.ZipFile;
 
 import org.eclipse.core.resources.IResource;
 import org.eclipse.core.runtime.FileLocator;
+import org.eclipse.core.runtime.IStatus;
+import org.eclipse.core.runtime.Status;
 import org.eclipse.jface.dialogs.IDialogSettings;
 import org.eclipse.jface.resource.CompositeImageDescriptor;
 import org.eclipse.jface.resource.ImageDescriptor;
 import org.eclipse.swt.graphics.Image;
 import org.eclipse.swt.graphics.Point;
 import org.eclipse.ui.plugin.AbstractUIPlugin;
+import org.osgi.framework.Bundle;
 import org.osgi.framework.BundleContext;
 
 /**
@@ -73,6 +86,21 @@ public class Activator extends AbstractUIPlugin {
 	// ImplActivator is in the same package as us, which equals to the plugin id
 	private static final String IMPL_ACTIVATOR_CLASS_NAME = PLUGIN_ID + ".ImplActivator";
 
+	private static final String EXPORTED_JAR_INFO_FILE_EXTENSION = ".info";
+	private static final String EXPORTED_JAR_INFO_BUNDLE = "bundle";
+	private static final String EXPORTED_JAR_INFO_HASH = "sha256";
+	private static final String EXPORTED_JAR_INFO_SIZE = "size";
+	private static final String EXPORTED_JAR_INFO_LAST_MODIFIED = "lastModified";
+
+	private static final String IMPL_CLASS_ARCHIVE_FILE_NAME = "impl_classes.archive";
+	/**
+	 * Flag for disabling the use of the class archive of the implementation JARs.
+	 * <p>
+	 * Can be set using the <code>saker.build.ide.eclipse.class.archive.disable</code> system property.
+	 */
+	private static final boolean IMPL_CLASS_ARCHIVE_DISABLED = Boolean
+			.getBoolean(PLUGIN_ID + ".class.archive.disable");
+
 	// The shared instance
 	private static Activator plugin;
 
@@ -80,6 +108,7 @@ public class Activator extends AbstractUIPlugin {
 	private JarFile sakerJar;
 
 	private ImplementationClassLoader implClassLoader;
+	private ImplementationClassArchive implClassArchive;
 	private Object implActivator;
 
 	public ImplementationClassLoader getImplClassLoader() {
@@ -127,14 +156,27 @@ public class Activator extends AbstractUIPlugin {
 		super.start(context);
 
 		try {
+			//export the JARs in parallel
+			FutureTask<Path> idesupportexport = new FutureTask<>(() -> exportEmbeddedJar(IDESUPPORT_RUNTIME_JAR_PATH));
+			Thread idesupportexportthread = new Thread(idesupportexport, "saker.build IDE support JAR export");
+			idesupportexportthread.setDaemon(true);
+			idesupportexportthread.start();
+
 			Path sakerjarpath = exportEmbeddedJar(SAKER_BUILD_RUNTIME_JAR_PATH);
-			Path idesupportjarpath = exportEmbeddedJar(IDESUPPORT_RUNTIME_JAR_PATH);
+			Path idesupportjarpath;
+			try {
+				idesupportjarpath = idesupportexport.get();
+			} catch (ExecutionException e) {
+				throw new IOException("Failed to export " + IDESUPPORT_RUNTIME_JAR_PATH, e.getCause());
+			}
 
 			this.sakerJar = createMultiReleaseJarFile(sakerjarpath);
 			this.ideSupportJar = createMultiReleaseJarFile(idesupportjarpath);
 
+			implClassArchive = openImplementationClassArchive(sakerjarpath, idesupportjarpath);
+
 			implClassLoader = new ImplementationClassLoader(context.getBundle(),
-					Arrays.asList(sakerJar, ideSupportJar));
+					Arrays.asList(sakerJar, ideSupportJar), implClassArchive);
 			Class<?> c = Class.forName(IMPL_ACTIVATOR_CLASS_NAME, false, implClassLoader);
 			implActivator = c.getConstructor().newInstance();
 			c.getMethod("start", ImplementationStartArguments.class).invoke(implActivator,
@@ -158,6 +200,14 @@ public class Activator extends AbstractUIPlugin {
 		try {
 			super.stop(context);
 		} finally {
+			if (implClassArchive != null && implClassLoader != null) {
+				try {
+					implClassArchive.writeIfNeeded(implClassLoader);
+				} catch (Exception e) {
+					getLog().log(new Status(IStatus.WARNING, PLUGIN_ID,
+							"Failed to write saker.build implementation class archive.", e));
+				}
+			}
 			//close the jars after the super.stop is called, as the jars are backing the implementation classloader,
 			// so they might still be used in some callbacks
 			if (ideSupportJar != null) {
@@ -194,22 +244,131 @@ public class Activator extends AbstractUIPlugin {
 		return r;
 	}
 
+	private ImplementationClassArchive openImplementationClassArchive(Path... jarpaths) {
+		if (IMPL_CLASS_ARCHIVE_DISABLED) {
+			return null;
+		}
+		try {
+			return ImplementationClassArchive.open(
+					getStateLocation().append(IMPL_CLASS_ARCHIVE_FILE_NAME).toFile().toPath(),
+					ImplementationClassArchive.createKey(jarpaths));
+		} catch (Exception e) {
+			getLog().log(new Status(IStatus.WARNING, PLUGIN_ID,
+					"Failed to open saker.build implementation class archive.", e));
+			return null;
+		}
+	}
+
+	/**
+	 * Exports the embedded JAR to the plugin state location.
+	 * <p>
+	 * The JAR is extracted to a temporary file, and moved atomically to its place, so a crash doesn't leave a partially
+	 * written JAR behind. The content hash, size and modification time of the exported JAR are recorded in an info
+	 * file next to it. If the bundle hasn't changed since the last export, only the attributes of the exported file
+	 * are checked.
+	 */
 	private Path exportEmbeddedJar(String jarname) throws IOException {
-		URL jarentry = FileLocator.resolve(getBundle().getEntry(jarname));
+		Bundle bundle = getBundle();
+		String bundlestamp = bundle.getVersion() + "@" + bundle.getLastModified();
+		Path result = getStateLocation().append(jarname).toFile().toPath();
+		Path infopath = result.resolveSibling(jarname + EXPORTED_JAR_INFO_FILE_EXTENSION);
+
+		Properties info = readExportedJarInfo(infopath);
+		if (info != null && bundlestamp.equals(info.getProperty(EXPORTED_JAR_INFO_BUNDLE))
+				&& isExportedJarIntact(result, info)) {
+			return result;
+		}
+
+		URL jarentry = FileLocator.resolve(bundle.getEntry(jarname));
 		URLConnection conn = jarentry.openConnection();
-		File jarfile = getStateLocation().append(jarname).toFile();
-		long existinglast = jarfile.lastModified();
-		Path result = jarfile.toPath();
-		try (InputStream is = conn.getInputStream()) {
-			long lastmodified = conn.getLastModified();
-			if (existinglast == 0 || existinglast != lastmodified) {
-				Files.copy(is, result, StandardCopyOption.REPLACE_EXISTING);
-				Files.setLastModifiedTime(result, FileTime.fromMillis(lastmodified));
+		long lastmodified = conn.getLastModified();
+		long expectedsize = conn.getContentLengthLong();
+		Path temppath = result.resolveSibling(jarname + "." + UUID.randomUUID() + ".temp");
+		try {
+			MessageDigest digest = createJarDigest();
+			long size;
+			try (InputStream is = new DigestInputStream(conn.getInputStream(), digest)) {
+				size = Files.copy(is, temppath);
+			}
+			if (expectedsize >= 0 && size != expectedsize) {
+				throw new IOException(
+						"Failed to export " + jarname + ", size mismatch: " + size + " expected: " + expectedsize);
 			}
+			String hash = toHexString(digest.digest());
+			if (info == null || !hash.equals(info.getProperty(EXPORTED_JAR_INFO_HASH))
+					|| !isExportedJarIntact(result, info)) {
+				Files.setLastModifiedTime(temppath, FileTime.fromMillis(lastmodified));
+				moveReplace(temppath, result);
+			}
+			//else the contents haven't changed, keep the existing file, only update the bundle stamp
+
+			Properties ninfo = new Properties();
+			ninfo.setProperty(EXPORTED_JAR_INFO_BUNDLE, bundlestamp);
+			ninfo.setProperty(EXPORTED_JAR_INFO_HASH, hash);
+			ninfo.setProperty(EXPORTED_JAR_INFO_SIZE, Long.toString(size));
+			ninfo.setProperty(EXPORTED_JAR_INFO_LAST_MODIFIED,
+					Long.toString(Files.getLastModifiedTime(result).toMillis()));
+			Path infotemppath = infopath.resolveSibling(infopath.getFileName() + "." + UUID.randomUUID() + ".temp");
+			try {
+				try (OutputStream os = Files.newOutputStream(infotemppath)) {
+					ninfo.store(os, null);
+				}
+				moveReplace(infotemppath, infopath);
+			} finally {
+				Files.deleteIfExists(infotemppath);
+			}
+		} finally {
+			Files.deleteIfExists(temppath);
 		}
 		return result;
 	}
 
+	private static Properties readExportedJarInfo(Path infopath) {
+		Properties result = new Properties();
+		try (InputStream is = Files.newInputStream(infopath)) {
+			result.load(is);
+		} catch (IOException | IllegalArgumentException e) {
+			return null;
+		}
+		return result;
+	}
+
+	private static boolean isExportedJarIntact(Path jarpath, Properties info) {
+		try {
+			BasicFileAttributes attrs = Files.readAttributes(jarpath, BasicFileAttributes.class);
+			return Long.toString(attrs.size()).equals(info.getProperty(EXPORTED_JAR_INFO_SIZE))
+					&& Long.toString(attrs.lastModifiedTime().toMillis())
+							.equals(info.getProperty(EXPORTED_JAR_INFO_LAST_MODIFIED));
+		} catch (IOException e) {
+			return false;
+		}
+	}
+
+	private static void moveReplace(Path source, Path target) throws IOException {
+		try {
+			Files.move(source, target, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+		} catch (AtomicMoveNotSupportedException e) {
+			Files.move(source, target, StandardCopyOption.REPLACE_EXISTING);
+		}
+	}
+
+	private static MessageDigest createJarDigest() throws IOException {
+		try {
+			return MessageDigest.getInstance("SHA-256");
+		} catch (NoSuchAlgorithmException e) {
+			throw new IOException("Hash algorithm not found.", e);
+		}
+	}
+
+	private static String toHexString(byte[] bytes) {
+		StringBuilder sb = new StringBuilder(bytes.length * 2);
+		for (byte b : bytes) {
+			sb.append(Character.forDigit((b >>> 4) & 0xF, 16));
+			sb.append(Character.forDigit(b & 0xF, 16));
+		}
+		return sb.toString();
+	}
+
 	/**
 	 * Returns an image descriptor for the image file at the given plug-in relative path
 	 *
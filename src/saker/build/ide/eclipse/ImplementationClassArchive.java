@@ -0,0 +1,288 @@
+/*
+ * Copyright (C) 2020 Bence Sipka
+ *
+ * This program is free software: you can redistribute it and/or modify 
+ * it under the terms of the GNU General Public License as published by 
+ * the Free Software Foundation, version 3.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package saker.build.ide.eclipse;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.zip.CRC32;
+
+/**
+ * Archive of the uncompressed class files that were loaded from the embedded implementation JARs.
+ * <p>
+ * The names of the classes that are loaded from the JARs are recorded during a session. If no valid archive was
+ * present, the recorded classes are written to the archive file when the plugin is stopped. On the next start, the
+ * archive is memory mapped, and the classes are defined directly from it, without looking up and inflating the JAR
+ * entries.
+ * <p>
+ * The archive is keyed by the names, sizes and modification times of the JARs, so it is regenerated when they are
+ * updated. The key also contains the Java version, as the JARs are opened as multi-release JARs, and the loaded class
+ * variants depend on the version of the running JVM.
+ * <p>
+ * The archive contains a checksum of the class data that is verified when it is opened. If a class still fails to be
+ * defined from the archive, it is {@linkplain #invalidate() invalidated}, and the classes are loaded from the JARs.
+ */
+public final class ImplementationClassArchive {
+	private static final int ARCHIVE_MAGIC = 0x5341_4b43;
+	private static final int ARCHIVE_VERSION = 2;
+
+	private final Path archivePath;
+	private final String key;
+
+	/**
+	 * The mapped archive file, or <code>null</code> if no valid archive was found.
+	 */
+	private volatile ByteBuffer archiveBuffer;
+	/**
+	 * Maps the class names to their offset and length in {@link #archiveBuffer}.
+	 */
+	private volatile Map<String, int[]> archiveEntries;
+
+	private final Set<String> loadedClassNames = ConcurrentHashMap.newKeySet();
+
+	private ImplementationClassArchive(Path archivePath, String key) {
+		this.archivePath = archivePath;
+		this.key = key;
+	}
+
+	/**
+	 * Opens the class archive at the given path.
+	 * <p>
+	 * If the archive doesn't exist, or it was created for a different key, an empty archive is returned that records
+	 * the loaded classes.
+	 * 
+	 * @param archivepath
+	 *            The path of the archive file.
+	 * @param key
+	 *            The key of the archive. See {@link #createKey(Path...)}.
+	 * @return The archive.
+	 */
+	public static ImplementationClassArchive open(Path archivepath, String key) {
+		ImplementationClassArchive result = new ImplementationClassArchive(archivepath, key);
+		result.readArchive();
+		return result;
+	}
+
+	/**
+	 * Creates an archive key for the argument JARs based on their names, sizes and modification times, and the
+	 * version of the running JVM.
+	 * 
+	 * @throws IOException
+	 *             If the attributes of the files cannot be read.
+	 */
+	public static String createKey(Path... jarpaths) throws IOException {
+		StringBuilder sb = new StringBuilder();
+		//the multi-release JAR entries are resolved for the current Java version
+		sb.append(System.getProperty("java.version"));
+		sb.append('\n');
+		for (Path jarpath : jarpaths) {
+			BasicFileAttributes attrs = Files.readAttributes(jarpath, BasicFileAttributes.class);
+			sb.append(jarpath.getFileName());
+			sb.append(':');
+			sb.append(attrs.size());
+			sb.append(':');
+			sb.append(attrs.lastModifiedTime().toMillis());
+			sb.append('\n');
+		}
+		return sb.toString();
+	}
+
+	/**
+	 * Gets the archived bytes of a class.
+	 * 
+	 * @return The class bytes, or <code>null</code> if not found in the archive.
+	 */
+	public ByteBuffer getClassBytes(String classname) {
+		ByteBuffer buffer = archiveBuffer;
+		Map<String, int[]> entries = archiveEntries;
+		if (buffer == null || entries == null) {
+			return null;
+		}
+		int[] entry = entries.get(classname);
+		if (entry == null) {
+			return null;
+		}
+		ByteBuffer result = buffer.duplicate();
+		result.position(entry[0]);
+		result.limit(entry[0] + entry[1]);
+		return result;
+	}
+
+	/**
+	 * Stops using the archive, as its contents are found to be invalid.
+	 * <p>
+	 * The archive is rewritten when the plugin is stopped.
+	 */
+	public void invalidate() {
+		archiveEntries = null;
+		archiveBuffer = null;
+	}
+
+	/**
+	 * Records that a class was loaded from the implementation JARs.
+	 */
+	public void classLoaded(String classname) {
+		if (archiveEntries != null) {
+			//the archive is used, it is not rewritten in this session
+			return;
+		}
+		loadedClassNames.add(classname);
+	}
+
+	/**
+	 * Writes the archive if no valid archive was found when it was opened.
+	 * <p>
+	 * The mapped archive is not rewritten, as the mapped file cannot be replaced on some platforms.
+	 * 
+	 * @param classloader
+	 *            The class loader to read the bytes of the recorded classes from.
+	 * @throws IOException
+	 *             If the writing fails.
+	 */
+	public void writeIfNeeded(ImplementationClassLoader classloader) throws IOException {
+		if (archiveEntries != null || loadedClassNames.isEmpty()) {
+			return;
+		}
+		List<String> names = new ArrayList<>();
+		List<byte[]> classes = new ArrayList<>();
+		for (String name : loadedClassNames) {
+			byte[] bytes = classloader.readJarClassBytes(name);
+			if (bytes == null) {
+				continue;
+			}
+			names.add(name);
+			classes.add(bytes);
+		}
+
+		ByteArrayOutputStream indexbytes = new ByteArrayOutputStream();
+		try (DataOutputStream index = new DataOutputStream(indexbytes)) {
+			index.writeUTF(key);
+			index.writeInt(names.size());
+			int offset = 0;
+			for (int i = 0; i < names.size(); i++) {
+				int len = classes.get(i).length;
+				index.writeUTF(names.get(i));
+				index.writeInt(offset);
+				index.writeInt(len);
+				offset += len;
+			}
+		}
+
+		CRC32 checksum = new CRC32();
+		for (byte[] bytes : classes) {
+			checksum.update(bytes);
+		}
+
+		Path temppath = archivePath.resolveSibling(archivePath.getFileName() + "." + UUID.randomUUID() + ".temp");
+		try {
+			try (OutputStream fileos = Files.newOutputStream(temppath);
+					DataOutputStream out = new DataOutputStream(new BufferedOutputStream(fileos))) {
+				out.writeInt(ARCHIVE_MAGIC);
+				out.writeInt(ARCHIVE_VERSION);
+				out.writeLong(checksum.getValue());
+				out.writeInt(indexbytes.size());
+				indexbytes.writeTo(out);
+				for (byte[] bytes : classes) {
+					out.write(bytes);
+				}
+			}
+			try {
+				Files.move(temppath, archivePath, StandardCopyOption.REPLACE_EXISTING,
+						StandardCopyOption.ATOMIC_MOVE);
+			} catch (AtomicMoveNotSupportedException e) {
+				Files.move(temppath, archivePath, StandardCopyOption.REPLACE_EXISTING);
+			}
+		} finally {
+			Files.deleteIfExists(temppath);
+		}
+	}
+
+	private void readArchive() {
+		try (FileChannel channel = FileChannel.open(archivePath, StandardOpenOption.READ)) {
+			long filesize = channel.size();
+			if (filesize > Integer.MAX_VALUE) {
+				return;
+			}
+			Map<String, int[]> entries;
+			int datastart;
+			//don't close the stream, as that would close the channel before the mapping
+			DataInputStream in = new DataInputStream(new BufferedInputStream(Channels.newInputStream(channel)));
+			if (in.readInt() != ARCHIVE_MAGIC || in.readInt() != ARCHIVE_VERSION) {
+				return;
+			}
+			long checksum = in.readLong();
+			int indexlen = in.readInt();
+			if (!key.equals(in.readUTF())) {
+				//different JARs, the archive is rewritten when the plugin is stopped
+				return;
+			}
+			datastart = 3 * Integer.BYTES + Long.BYTES + indexlen;
+			if (datastart > filesize) {
+				//corrupt archive
+				return;
+			}
+			int count = in.readInt();
+			entries = new HashMap<>(count * 4 / 3 + 1);
+			for (int i = 0; i < count; i++) {
+				String name = in.readUTF();
+				int offset = in.readInt();
+				int len = in.readInt();
+				if (offset < 0 || len < 0 || (long) datastart + offset + len > filesize) {
+					//corrupt archive
+					return;
+				}
+				entries.put(name, new int[] { datastart + offset, len });
+			}
+			ByteBuffer buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, filesize);
+			ByteBuffer data = buffer.duplicate();
+			data.position(datastart);
+			CRC32 datachecksum = new CRC32();
+			datachecksum.update(data);
+			if (datachecksum.getValue() != checksum) {
+				//corrupt archive
+				return;
+			}
+			this.archiveBuffer = buffer;
+			this.archiveEntries = entries;
+		} catch (NoSuchFileException e) {
+		} catch (IOException | RuntimeException e) {
+			//failed to read the archive, it is rewritten
+			this.archiveBuffer = null;
+			this.archiveEntries = null;
+		}
+	}
+}
@@ -16,76 +16,193 @@
 package saker.build.ide.eclipse;
 
 import java.io.ByteArrayOutputStream;
+import java.io.FileNotFoundException;
 import java.io.IOException;
 import java.io.InputStream;
 import java.net.MalformedURLException;
 import java.net.URL;
 import java.net.URLConnection;
 import java.net.URLStreamHandler;
+import java.nio.ByteBuffer;
+import java.security.ProtectionDomain;
 import java.util.ArrayList;
 import java.util.Collection;
 import java.util.Collections;
 import java.util.Enumeration;
+import java.util.HashMap;
+import java.util.HashSet;
 import java.util.List;
+import java.util.Map;
+import java.util.Set;
 import java.util.jar.JarFile;
 import java.util.zip.ZipEntry;
 
 import org.osgi.framework.Bundle;
 
 public class ImplementationClassLoader extends ClassLoader {
-	private Bundle bundle;
-	private List<JarFile> jars;
+	static {
+		//the classes are loaded with per class name locks instead of synchronizing on the class loader
+		//see ClassLoader.getClassLoadingLock(String)
+		registerAsParallelCapable();
+	}
+
+	private static final String ENTRY_URL_PROTOCOL = "sakerimplfile";
+
+	private static final String BUNDLE_IMPLEMENTATION_DIRECTORY = "impl";
+	private static final String MULTI_RELEASE_VERSIONS_DIRECTORY = "META-INF/versions/";
+
+	private final Bundle bundle;
+	private final List<JarFile> jars;
+
+	/**
+	 * Maps the directories (packages) to the JARs that contain entries in them. The JARs are in the same order as in
+	 * {@link #jars}.
+	 */
+	private final Map<String, List<JarFile>> jarDirectoryIndex;
+	/**
+	 * The directories (packages) that contain classes in the implementation directory of the bundle, or
+	 * <code>null</code> if they couldn't be enumerated.
+	 */
+	private final Set<String> bundleImplementationDirectories;
+	/**
+	 * The stream handler for the URLs of the JAR entry resources. The JAR of the entry is identified by its index in
+	 * {@link #jars}, which is stored as the reference part of the URL.
+	 */
+	private final URLStreamHandler jarEntryURLHandler = new URLStreamHandler() {
+		@Override
+		protected URLConnection openConnection(URL u) throws IOException {
+			JarFile jf;
+			try {
+				jf = jars.get(Integer.parseInt(u.getRef()));
+			} catch (RuntimeException e) {
+				throw new IOException("Invalid resource URL: " + u, e);
+			}
+			ZipEntry jfentry = jf.getEntry(u.getFile());
+			if (jfentry == null) {
+				throw new FileNotFoundException(u.toString());
+			}
+			return new URLConnection(u) {
+				@Override
+				public void connect() throws IOException {
+				}
+
+				@Override
+				public long getContentLengthLong() {
+					return jfentry.getSize();
+				}
+
+				@Override
+				public InputStream getInputStream() throws IOException {
+					return jf.getInputStream(jfentry);
+				}
+			};
+		}
+	};
+
+	/**
+	 * The archive of the classes in the JARs, or <code>null</code> if not used.
+	 */
+	private final ImplementationClassArchive classArchive;
 
 	public ImplementationClassLoader(Bundle bundle, List<JarFile> jars) {
+		this(bundle, jars, null);
+	}
+
+	public ImplementationClassLoader(Bundle bundle, List<JarFile> jars, ImplementationClassArchive classArchive) {
 		super(ImplementationClassLoader.class.getClassLoader());
 		this.bundle = bundle;
 		this.jars = jars;
+		this.classArchive = classArchive;
+		this.jarDirectoryIndex = createJarDirectoryIndex(jars);
+		this.bundleImplementationDirectories = createBundleImplementationDirectories(bundle);
 	}
 
 	@Override
 	protected Class<?> findClass(String name) throws ClassNotFoundException {
 		String cfilepath = name.replace('.', '/') + ".class";
-		URL entry = bundle.getEntry("impl/" + cfilepath);
-		if (entry != null) {
-			byte[] classbytes;
-			try (InputStream is = entry.openStream()) {
-				classbytes = readStreamFully(is);
-			} catch (Exception e) {
-				throw new ClassNotFoundException(name, e);
+		String directory = getDirectory(cfilepath);
+		if (bundleImplementationDirectories == null || bundleImplementationDirectories.contains(directory)) {
+			URL entry = bundle.getEntry(BUNDLE_IMPLEMENTATION_DIRECTORY + "/" + cfilepath);
+			if (entry != null) {
+				byte[] classbytes;
+				try {
+					URLConnection conn = entry.openConnection();
+					try (InputStream is = conn.getInputStream()) {
+						classbytes = readStreamFully(is, conn.getContentLengthLong());
+					}
+				} catch (Exception e) {
+					throw new ClassNotFoundException(name, e);
+				}
+				return defineClass(name, classbytes, 0, classbytes.length);
 			}
-			return defineClass(name, classbytes, 0, classbytes.length);
 		}
-		for (JarFile jf : jars) {
-			try {
-				ZipEntry jfentry = jf.getEntry(cfilepath);
-				if (jfentry != null) {
-					byte[] classbytes;
-					try (InputStream is = jf.getInputStream(jfentry)) {
-						classbytes = readStreamFully(is);
-					}
-					return defineClass(name, classbytes, 0, classbytes.length);
+		if (classArchive != null) {
+			ByteBuffer archivedbytes = classArchive.getClassBytes(name);
+			if (archivedbytes != null) {
+				try {
+					return defineClass(name, archivedbytes, (ProtectionDomain) null);
+				} catch (ClassFormatError e) {
+					//the archive is corrupt, stop using it, and load the class from the JARs
+					classArchive.invalidate();
 				}
-			} catch (Exception e) {
-				// ZipFile.ensureOpen 
-				// ZipFile.getEntry
-				//     throws IllegalStateException in case of closed file, so catch all kinds of exceptions
-				throw new ClassNotFoundException(name, e);
 			}
 		}
+		byte[] classbytes;
+		try {
+			classbytes = readJarClassBytes(cfilepath, directory);
+		} catch (Exception e) {
+			// ZipFile.ensureOpen 
+			// ZipFile.getEntry
+			//     throws IllegalStateException in case of closed file, so catch all kinds of exceptions
+			throw new ClassNotFoundException(name, e);
+		}
+		if (classbytes != null) {
+			Class<?> result = defineClass(name, classbytes, 0, classbytes.length);
+			if (classArchive != null) {
+				classArchive.classLoaded(name);
+			}
+			return result;
+		}
 		return super.findClass(name);
 	}
 
+	/**
+	 * Reads the bytes of a class from the implementation JARs.
+	 * 
+	 * @param name
+	 *            The binary name of the class.
+	 * @return The class bytes, or <code>null</code> if not found.
+	 * @throws IOException
+	 *             If the reading fails.
+	 */
+	public byte[] readJarClassBytes(String name) throws IOException {
+		String cfilepath = name.replace('.', '/') + ".class";
+		return readJarClassBytes(cfilepath, getDirectory(cfilepath));
+	}
+
+	private byte[] readJarClassBytes(String cfilepath, String directory) throws IOException {
+		for (JarFile jf : getJarsForEntry(directory)) {
+			ZipEntry jfentry = jf.getEntry(cfilepath);
+			if (jfentry != null) {
+				try (InputStream is = jf.getInputStream(jfentry)) {
+					return readStreamFully(is, jfentry.getSize());
+				}
+			}
+		}
+		return null;
+	}
+
 	@Override
 	protected URL findResource(String name) {
 		URL bundleres = bundle.getResource(name);
 		if (bundleres != null) {
 			return bundleres;
 		}
-		for (JarFile jf : jars) {
+		for (JarFile jf : getJarsForEntry(getDirectory(name))) {
 			ZipEntry jfentry = jf.getEntry(name);
 			if (jfentry != null) {
 				try {
-					return jarFileEntryToURL(name, jf, jfentry);
+					return jarFileEntryToURL(name, jf);
 				} catch (MalformedURLException e) {
 					//shouldn't happen
 					e.printStackTrace();
@@ -102,11 +219,11 @@ public class ImplementationClassLoader extends ClassLoader {
 		if (bundleres != null) {
 			res.add(bundleres);
 		}
-		for (JarFile jf : jars) {
+		for (JarFile jf : getJarsForEntry(getDirectory(name))) {
 			ZipEntry jfentry = jf.getEntry(name);
 			if (jfentry != null) {
 				try {
-					res.add(jarFileEntryToURL(name, jf, jfentry));
+					res.add(jarFileEntryToURL(name, jf));
 				} catch (MalformedURLException e) {
 					// shouldn't happen
 					e.printStackTrace();
@@ -116,9 +233,104 @@ public class ImplementationClassLoader extends ClassLoader {
 		return Collections.enumeration(res);
 	}
 
+	private List<JarFile> getJarsForEntry(String directory) {
+		if (jarDirectoryIndex == null) {
+			return jars;
+		}
+		List<JarFile> result = jarDirectoryIndex.get(directory);
+		if (result == null) {
+			return Collections.emptyList();
+		}
+		return result;
+	}
+
+	private static String getDirectory(String entryname) {
+		int idx = entryname.lastIndexOf('/');
+		if (idx < 0) {
+			return "";
+		}
+		return entryname.substring(0, idx);
+	}
+
+	private static Map<String, List<JarFile>> createJarDirectoryIndex(List<JarFile> jars) {
+		Map<String, List<JarFile>> result = new HashMap<>();
+		try {
+			for (JarFile jf : jars) {
+				for (Enumeration<? extends ZipEntry> it = jf.entries(); it.hasMoreElements();) {
+					ZipEntry entry = it.nextElement();
+					String entryname = entry.getName();
+					if (entryname.startsWith(MULTI_RELEASE_VERSIONS_DIRECTORY)) {
+						//index the versioned entries by their unversioned name, as JarFile.getEntry resolves them
+						int versionend = entryname.indexOf('/', MULTI_RELEASE_VERSIONS_DIRECTORY.length());
+						if (versionend < 0) {
+							continue;
+						}
+						entryname = entryname.substring(versionend + 1);
+					}
+					List<JarFile> dirjars = result.computeIfAbsent(getDirectory(entryname), x -> new ArrayList<>(2));
+					if (dirjars.isEmpty() || dirjars.get(dirjars.size() - 1) != jf) {
+						dirjars.add(jf);
+					}
+				}
+			}
+		} catch (RuntimeException e) {
+			//failed to enumerate the entries, the JARs are searched linearly
+			return null;
+		}
+		return result;
+	}
+
+	private static Set<String> createBundleImplementationDirectories(Bundle bundle) {
+		Enumeration<URL> entries;
+		try {
+			entries = bundle.findEntries(BUNDLE_IMPLEMENTATION_DIRECTORY, "*.class", true);
+		} catch (RuntimeException e) {
+			//failed to enumerate the entries, the bundle is searched for every class
+			return null;
+		}
+		if (entries == null) {
+			//no implementation directory, or it cannot be enumerated
+			return null;
+		}
+		String prefix = "/" + BUNDLE_IMPLEMENTATION_DIRECTORY + "/";
+		Set<String> result = new HashSet<>();
+		while (entries.hasMoreElements()) {
+			String path = entries.nextElement().getPath();
+			if (!path.startsWith(prefix)) {
+				//unrecognized entry path format, don't use the index
+				return null;
+			}
+			result.add(getDirectory(path.substring(prefix.length())));
+		}
+		return result;
+	}
+
+	/**
+	 * Reads the stream fully, allocating the result array with the expected size if known.
+	 */
+	private static byte[] readStreamFully(InputStream is, long size) throws IOException {
+		if (size < 0 || size > Integer.MAX_VALUE - 8) {
+			return readStreamFully(is);
+		}
+		byte[] result = new byte[(int) size];
+		int offset = 0;
+		while (offset < result.length) {
+			int r = is.read(result, offset, result.length - offset);
+			if (r < 0) {
+				throw new IOException("Unexpected end of stream: " + offset + " of " + size + " bytes");
+			}
+			offset += r;
+		}
+		if (is.read() >= 0) {
+			//the size was incorrect
+			throw new IOException("Stream is longer than the expected " + size + " bytes");
+		}
+		return result;
+	}
+
 	private static byte[] readStreamFully(InputStream is) throws IOException {
-		ByteArrayOutputStream baos = new ByteArrayOutputStream();
-		byte[] buf = new byte[4096];
+		ByteArrayOutputStream baos = new ByteArrayOutputStream(16 * 1024);
+		byte[] buf = new byte[16 * 1024];
 		for (int r; (r = is.read(buf)) > 0;) {
 			baos.write(buf, 0, r);
 		}
@@ -126,22 +338,8 @@ public class ImplementationClassLoader extends ClassLoader {
 		return classbytes;
 	}
 
-	private static URL jarFileEntryToURL(String name, JarFile jf, ZipEntry jfentry) throws MalformedURLException {
-		return new URL("sakerimplfile", null, 0, name, new URLStreamHandler() {
-			@Override
-			protected URLConnection openConnection(URL u) throws IOException {
-				return new URLConnection(u) {
-					@Override
-					public void connect() throws IOException {
-					}
-
-					@Override
-					public InputStream getInputStream() throws IOException {
-						return jf.getInputStream(jfentry);
-					}
-				};
-			}
-		});
+	private URL jarFileEntryToURL(String name, JarFile jf) throws MalformedURLException {
+		return new URL(ENTRY_URL_PROTOCOL, null, 0, name + "#" + jars.indexOf(jf), jarEntryURLHandler);
 	}
 
 }